@@ -0,0 +1,90 @@
+/*
+ * DS Desktop Notify
+ * A small utility to show small notifications in your Desktop anytime!
+ */
+package ds.desktop.notify;
+
+import java.awt.EventQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ready-made executors to run the actions of clicked notifications. Set one
+ * for all the notifications through
+ * {@link DesktopNotifyDriver#setActionExecutor(Executor)}, or for a single one
+ * through {@link DesktopNotify#setActionExecutor(Executor)}. Any other
+ * <code>Executor</code> will do too.
+ * <p>
+ * Actions run in the event dispatch thread by default. Slow actions should be
+ * given a thread pool instead, or they'll freeze the notifications and the
+ * rest of your UI while they run.
+ * @author DragShot
+ * @since 0.9
+ */
+public final class ActionExecutors {
+    /** Runs actions in the event dispatch thread. */
+    private static final Executor EVENT_THREAD = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            if (EventQueue.isDispatchThread()) command.run();
+            else EventQueue.invokeLater(command);
+        }
+    };
+
+    private ActionExecutors() {}
+
+    /**
+     * @return An executor that runs actions in the event dispatch thread,
+     *         which is the default.
+     */
+    public static Executor eventThread() {
+        return EVENT_THREAD;
+    }
+
+    /**
+     * Creates a pool with a fixed amount of daemon threads to run actions.
+     * Threads are started as needed and stopped after a minute without work.
+     * Actions that can't be run right away wait in line.
+     * @param threads The maximum amount of actions to run at once.
+     * @return The new executor.
+     */
+    public static Executor threadPool(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("At least one thread is needed");
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads,
+                60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "DesktopNotify Action Thread "
+                        + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * Creates an executor that runs each action in a new virtual thread. They
+     * are only available since Java 21; on older runtimes a pool with as
+     * many threads as processors is returned instead.
+     * @return The new executor.
+     */
+    public static Executor virtualThreads() {
+        try {
+            return (Executor)java.util.concurrent.Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            DesktopNotify.logDebug("NotifyDriver", "Virtual threads are not "
+                    + "supported, using a thread pool instead.");
+            return threadPool(Runtime.getRuntime().availableProcessors());
+        }
+    }
+}
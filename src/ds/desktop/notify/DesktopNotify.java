@@ -9,14 +9,20 @@ import java.awt.Font;
 import java.awt.FontMetrics;
 import java.awt.GradientPaint;
 import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
 import java.awt.Image;
 import java.awt.RenderingHints;
 import java.awt.event.ActionListener;
+import java.awt.font.FontRenderContext;
+import java.awt.font.TextLayout;
 import java.awt.geom.AffineTransform;
+import java.awt.image.VolatileImage;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.PrintWriter;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.Executor;
 
 /**
  * Main class of DS Desktop Notify. Use it to create and show notifications on
@@ -39,6 +45,15 @@ public class DesktopNotify {
     public static final int LEFT_TO_RIGHT = 0;
     public static final int RIGHT_TO_LEFT = 1;
     
+    /** Priority of notifications that can wait, like tips. */
+    public static final int PRIORITY_LOW = 0;
+    /** Priority of most notifications. */
+    public static final int PRIORITY_NORMAL = 1;
+    /** Priority of warnings and input requests. */
+    public static final int PRIORITY_HIGH = 2;
+    /** Priority of errors and failures. */
+    public static final int PRIORITY_CRITICAL = 3;
+    
     private static NotifyTheme defTheme = NotifyTheme.Dark;
     
     /**
@@ -279,21 +294,126 @@ public class DesktopNotify {
      * It is refreshed automatically when the message is set.
      */
     String[] msgs = new String[0];
+    /**
+     * The shaped lines of the title, ready to be drawn. Empty lines are left
+     * as {@code null}. They're prepared along with {@link #tlts}.
+     */
+    TextLayout[] tltLayouts = new TextLayout[0];
+    /**
+     * The shaped lines of the message, ready to be drawn. Empty lines are
+     * left as {@code null}. They're prepared along with {@link #msgs}.
+     */
+    TextLayout[] msgLayouts = new TextLayout[0];
+    /** Where each line of the title starts (X). */
+    int[] tltX = new int[0];
+    /** Where each line of the message starts (X). */
+    int[] msgX = new int[0];
     
     int w = 0;
     int h = 0;
-    boolean visible = false;
-    boolean markedForHide = false;
+    volatile boolean visible = false;
+    volatile boolean markedForHide = false;
+    /**
+     * Set once the text has been measured and wrapped by the layout stage, so
+     * the driver can put the notification on screen.
+     */
+    volatile boolean laidOut = false;
+    /** When this notification was posted, as given by System.nanoTime(). */
+    long postTime = 0L;
     
     int highl = 0;
+    boolean hover = false;
+    
+    /**
+     * Value of {@link #posY} while the notification isn't being drawn.
+     */
+    static final int OFF_SCREEN = Integer.MIN_VALUE;
+    /**
+     * The vertical position where the driver is drawing this notification.
+     */
+    int posY = OFF_SCREEN;
+    /**
+     * The time it takes for a notification to move to a new place in the
+     * stack, in milliseconds.
+     */
+    static final int REFLOW_TIME = 250;
+    /**
+     * The vertical position assigned to this notification by the driver's
+     * layout. It only changes when notifications are added or removed.
+     */
+    int slotY = OFF_SCREEN;
+    /**
+     * The position this notification is moving from, while it reflows
+     * towards {@link #slotY}.
+     */
+    int fromY = OFF_SCREEN;
+    /** The time the last reflow started. */
+    long reflowStart = 0L;
+    /**
+     * The fade progress set by the last update, as given by
+     * {@link #fadeProgress(long)}.
+     */
+    long fade = Long.MIN_VALUE;
     
     long popupStart = 0L;
     long timeOut = 8000L;
+    /**
+     * The expiration time the driver has scheduled for this notification, or
+     * <code>Long.MAX_VALUE</code> if it isn't scheduled.
+     */
+    long expiry = Long.MAX_VALUE;
+    
+    /**
+     * The amount of highlight levels covered by each cached image.
+     */
+    private static final int HOVER_STEP = 5;
+    /**
+     * The contents of this notification already painted, one image for every
+     * {@link #HOVER_STEP} highlight levels. Images are created as needed, as
+     * <code>VolatileImage</code>s if the pipeline is accelerated.
+     */
+    private Image[] cache;
+    /**
+     * The composites used by the fade animation, one for every 1% of opacity,
+     * so they don't have to be created on every frame.
+     */
+    private static final AlphaComposite[] FADE_COMPOSITES = new AlphaComposite[101];
+    static {
+        for (int i = 0; i < FADE_COMPOSITES.length; i++) {
+            FADE_COMPOSITES[i] = AlphaComposite.getInstance(
+                    AlphaComposite.SRC_OVER, i/100F);
+        }
+    }
     
     /**
      * An action to perform when the notification is clicked.
      */
     ActionListener action;
+    Executor actionExecutor;
+    
+    /**
+     * The key that tells duplicates of this notification apart when the
+     * driver coalesces them, or <code>null</code> to use the contents.
+     */
+    Object coalesceKey;
+    /** The key this notification was posted with, while it takes duplicates. */
+    Object liveKey;
+    /** The times this notification was posted while queued or on screen. */
+    volatile int occurrences = 1;
+    /** The occurrences shown on screen, as of the last update. */
+    int shownOccurrences = 1;
+    /** The timeout set when this notification was posted. */
+    long baseTimeOut;
+    /** Set once it started closing, so it takes no more duplicates. */
+    volatile boolean closing = false;
+    /** The source this notification comes from, for rate limiting. */
+    String source;
+    /** The priority set for this notification, or -1 to use its type. */
+    int priority = -1;
+    /** The order in which this notification was posted. */
+    long postSeq;
+    /** The priority this notification had when it was posted. */
+    int postPriority;
     
     /**
      * A protected constructor for a DesktopNotify object, called internally.
@@ -335,7 +455,10 @@ public class DesktopNotify {
      * @param theme The <code>NotifyTheme</code> to use for this notification.
      */
     public void setTheme(NotifyTheme theme) {
-        if (theme != null) this.theme = theme;
+        if (theme != null) {
+            this.theme = theme;
+            flushCache();
+        }
     }
 
     /**
@@ -355,6 +478,131 @@ public class DesktopNotify {
         this.action = action;
     }
     
+    /**
+     * @return The executor that runs the action of this notification, or
+     *         <code>null</code> if it uses the one set in the driver.
+     */
+    public Executor getActionExecutor() {
+        return actionExecutor;
+    }
+    
+    /**
+     * Sets the executor that will run the action of this notification when
+     * it gets clicked, instead of the one set in the driver.
+     * @param executor The executor, or <code>null</code> to use the one set in
+     *                 the driver.
+     * @see ActionExecutors
+     * @see DesktopNotifyDriver#setActionExecutor(Executor)
+     */
+    public void setActionExecutor(Executor executor) {
+        this.actionExecutor = executor;
+    }
+    
+    /**
+     * @return The key used to tell duplicates of this notification apart, or
+     *         <code>null</code> if the title, message and type are used.
+     * @see DesktopNotifyDriver#setCoalescing(boolean)
+     */
+    public Object getCoalesceKey() {
+        return coalesceKey;
+    }
+    
+    /**
+     * Sets the key used to tell duplicates of this notification apart when
+     * the driver coalesces them. Notifications with equal keys are considered
+     * the same, no matter what they show.
+     * @param key The key, or <code>null</code> to use the title, message and
+     *            type instead.
+     * @see DesktopNotifyDriver#setCoalescing(boolean)
+     */
+    public void setCoalesceKey(Object key) {
+        this.coalesceKey = key;
+    }
+    
+    /**
+     * @return The times this notification was posted while it was queued or
+     *         on screen. It is always 1 unless duplicates are coalesced.
+     * @see DesktopNotifyDriver#setCoalescing(boolean)
+     */
+    public int getOccurrences() {
+        return occurrences;
+    }
+    
+    /**
+     * @return The priority of this notification. Unless one was set, it
+     *         depends on the type: errors and failures are critical, warnings
+     *         and input requests are high, tips are low and the rest are
+     *         normal.
+     */
+    public int getPriority() {
+        if (priority >= 0) return priority;
+        switch (type) {
+            case ERROR: case FAIL: return PRIORITY_CRITICAL;
+            case WARNING: case INPUT_REQUEST: return PRIORITY_HIGH;
+            case TIP: return PRIORITY_LOW;
+            default: return PRIORITY_NORMAL;
+        }
+    }
+    
+    /**
+     * Sets the priority of this notification. When there's no room on screen,
+     * the notification with the highest priority is the next one to be
+     * shown, and notifications with the same priority are shown in the order
+     * they were posted.
+     * @param priority The priority, like {@link #PRIORITY_NORMAL}, or -1 to
+     *                 use the one given by the type.
+     * @see DesktopNotifyDriver#setPreemptionPriority(int)
+     */
+    public void setPriority(int priority) {
+        this.priority = priority < 0 ? -1 : priority;
+    }
+    
+    /**
+     * @return The source this notification comes from, or <code>null</code>
+     *         if it has none.
+     */
+    public String getSource() {
+        return source;
+    }
+    
+    /**
+     * Tags this notification with the source it comes from, like the name of
+     * a service or producer. Notifications from the same source share the
+     * same rate limit.
+     * @param source The source, or <code>null</code> to never limit this
+     *               notification.
+     * @see DesktopNotifyDriver#setRateLimit(double, int)
+     */
+    public void setSource(String source) {
+        this.source = source;
+    }
+    
+    /**
+     * @return The key used to find duplicates of this notification.
+     */
+    Object contentKey() {
+        if (coalesceKey != null) return coalesceKey;
+        return Arrays.asList(title, message, type);
+    }
+    
+    /**
+     * Counts a duplicate of this notification, unless it is already going
+     * away.
+     * @return <code>true</code> if the duplicate was taken.
+     */
+    synchronized boolean addOccurrence() {
+        if (!visible || markedForHide || closing) return false;
+        occurrences++;
+        return true;
+    }
+    
+    /**
+     * Hides this notification for good, so it takes no more duplicates.
+     */
+    synchronized void dismiss() {
+        setVisible(false);
+    }
+    
     /**
      * Allows to set a timeout for this notification, in milliseconds.
      * After the time is 'out', and if there isn't an action set, the
@@ -363,12 +611,55 @@ public class DesktopNotify {
      */
     public void setTimeout(long millis){
         timeOut = millis < 0 ? 0 : millis;
+        if (visible) DesktopNotifyDriver.requestFrame();
     }
     
     protected long expTime(){
         return timeOut == 0 ? Long.MAX_VALUE : popupStart + timeOut;
     }
     
+    /**
+     * Tells if this notification still needs frames to be painted, that is, if
+     * it is fading in or out, or if its highlight hasn't caught up with the
+     * hover state yet.
+     * @param l The current time.
+     * @return <code>true</code> if the notification is being animated.
+     */
+    protected boolean isAnimating(long l) {
+        if (l - popupStart < 500 || expTime() - l < 500) return true;
+        if (l - reflowStart < REFLOW_TIME) return true;
+        return hover ? highl < 20 : highl > 0;
+    }
+    
+    /**
+     * Moves this notification to a new slot in the stack. If it was already
+     * placed, it slides there from where it is being drawn.
+     * @param y The new vertical position.
+     * @param l The current time.
+     */
+    void moveTo(int y, long l) {
+        if (slotY == y) return;
+        if (posY == OFF_SCREEN) {
+            reflowStart = 0L;
+        } else {
+            fromY = posY;
+            reflowStart = l;
+        }
+        slotY = y;
+    }
+    
+    /**
+     * @param l The current time.
+     * @return The vertical position this notification should be drawn at,
+     *         easing out of the last reflow.
+     */
+    int layoutY(long l) {
+        long t = l - reflowStart;
+        if (t >= REFLOW_TIME || t < 0) return slotY;
+        float f = 1F - (float)t / REFLOW_TIME;
+        return slotY + Math.round((fromY - slotY) * f * f);
+    }
+    
     /**
      * Polls the Driver in order to show this notification, so you don't have to
      * do it yourself.
@@ -378,6 +669,19 @@ public class DesktopNotify {
         DesktopNotifyDriver.postPane(this);
     }
     
+    /**
+     * Shows many notifications at once. They're laid out together, in
+     * parallel, and handed to the driver in one go, so they get on screen
+     * together as long as they fit. This method returns once they're all laid
+     * out and queued. If the queue is full and the overflow policy is
+     * {@link DesktopNotifyDriver#OVERFLOW_BLOCK}, it waits for room for the
+     * whole batch first.
+     * @param notifications The notifications to show.
+     */
+    public static void showAll(Collection<DesktopNotify> notifications) {
+        DesktopNotifyDriver.postPanes(notifications);
+    }
+    
     /**
      * Hides this notification immediately if it is already being displayed.
      * The action itself is handled by the Driver, this method only marks this
@@ -385,6 +689,7 @@ public class DesktopNotify {
      */
     public void hide() {
         markedForHide = true;
+        DesktopNotifyDriver.requestFrame();
     }
     
     protected void setWidth(int w){
@@ -404,10 +709,13 @@ public class DesktopNotify {
      */
     protected void setVisible(boolean visible) {
         this.visible = visible;
+        if (!visible) flushCache();
     }
     
     /**
-     * The painting routine for the notification goes here.
+     * The painting routine for the notification goes here. The contents are
+     * taken from a cached image, so only the fade animation gets computed on
+     * every frame.
      * @param x     Where to start painting (X)
      * @param y     Where to start painting (Y)
      * @param hover A boolean that is <code>true</code> if the user is hovering
@@ -416,60 +724,201 @@ public class DesktopNotify {
      * @param l     The current time.
      */
     public void render(int x, int y, boolean hover, Graphics2D rd, long l) {
+        update(hover, l);
+        paint(x, y, rd);
+    }
+    
+    /**
+     * Works out the progress of the fade animation at a given time.
+     * @param l The current time.
+     * @return The progress, from 0 (invisible) to 500 (opaque), or -1 if the
+     *         notification is not fading in or out.
+     */
+    long fadeProgress(long l) {
         long i = l - popupStart;
         if (i > 500) i = expTime()-l;
         if (i < 0) i = 0;
         if (i > 500) i = -1;
-        rd.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
-                RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
-        AffineTransform trans=rd.getTransform();
-        rd.translate(x, y);
-        if (i != -1) {
-            double d = i/500.0;
-            rd.translate(w/2-((w/2)*d), h/2-((h/2)*d));
-            rd.scale(d, d);
-            rd.setComposite(AlphaComposite
-                    .getInstance(AlphaComposite.SRC_OVER,(float)d));
+        return i;
+    }
+    
+    /**
+     * Moves the animations of this notification to a new frame.
+     * @param hover A boolean that is <code>true</code> if the user is hovering
+     *              this notification with the mouse pointer.
+     * @param l     The current time.
+     * @return <code>true</code> if the notification looks different than it
+     *         did in the previous frame and has to be painted again.
+     */
+    boolean update(boolean hover, long l) {
+        long i = fadeProgress(l);
+        int step = cacheStep();
+        this.hover = hover;
+        if (hover && highl<20) highl++;
+        if (!hover && highl>0) highl--;
+        boolean changed = i != fade || step != cacheStep();
+        fade = i;
+        return changed;
+    }
+    
+    /**
+     * Paints this notification as it was left by the last update.
+     * @param x  Where to start painting (X)
+     * @param y  Where to start painting (Y)
+     * @param rd The <code>Graphics2D</code> object to use for painting.
+     */
+    void paint(int x, int y, Graphics2D rd) {
+        Image img = getCachedImage(rd);
+        //Larger than the notification if it was painted at device resolution
+        int iw = img.getWidth(null), ih = img.getHeight(null);
+        if (fade != -1 && DesktopNotifyDriver.getQualityTier()
+                >= DesktopNotifyDriver.QUALITY_NO_SCALING) {
+            rd.setComposite(FADE_COMPOSITES[(int)(fade/5)]);
+            drawCachedImage(img, x, y, iw, ih, rd);
+            rd.setComposite(AlphaComposite.SrcOver);
+        } else if (fade != -1) {
+            //Scale from the center, without touching the transform
+            int sw = (int)(w*fade/500), sh = (int)(h*fade/500);
+            if (sw > 0 && sh > 0) {
+                int sx = x + (w - sw)/2, sy = y + (h - sh)/2;
+                rd.setComposite(FADE_COMPOSITES[(int)(fade/5)]);
+                rd.drawImage(img, sx, sy, sx + sw, sy + sh, 0, 0, iw, ih, null);
+                rd.setComposite(AlphaComposite.SrcOver);
+            }
+        } else {
+            drawCachedImage(img, x, y, iw, ih, rd);
+        }
+        if (img instanceof VolatileImage && ((VolatileImage)img).contentsLost()) {
+            //Paint it again as soon as possible
+            fade = Long.MIN_VALUE;
+            DesktopNotifyDriver.requestFrame();
+        }
+    }
+    
+    /**
+     * Draws a cached image over the area of this notification, scaling it
+     * down if it was painted at device resolution.
+     */
+    private void drawCachedImage(Image img, int x, int y, int iw, int ih,
+            Graphics2D rd) {
+        if (iw == w && ih == h) rd.drawImage(img, x, y, null);
+        else rd.drawImage(img, x, y, x + w, y + h, 0, 0, iw, ih, null);
+    }
+    
+    /**
+     * @return The index of the cached image used for the current highlight.
+     */
+    private int cacheStep() {
+        return (highl + HOVER_STEP / 2) / HOVER_STEP;
+    }
+    
+    /**
+     * Gets the image with the contents of this notification for the current
+     * highlight, painting it first if it isn't cached yet.
+     * @param rd The <code>Graphics2D</code> object the image will be drawn
+     *           with.
+     * @return The contents of this notification, ready to be drawn.
+     */
+    private Image getCachedImage(Graphics2D rd) {
+        GraphicsConfiguration gc = rd.getDeviceConfiguration();
+        int step = cacheStep();
+        if (cache == null) cache = new Image[20 / HOVER_STEP + 1];
+        Image img = cache[step];
+        if (img instanceof VolatileImage) {
+            VolatileImage vImg = (VolatileImage)img;
+            int state = vImg.validate(gc);
+            if (state == VolatileImage.IMAGE_INCOMPATIBLE) {
+                vImg.flush();
+                img = null;
+            } else if (state == VolatileImage.IMAGE_RESTORED) {
+                paintCachedImage(vImg, step);
+            }
+        }
+        if (img == null) {
+            AffineTransform tx = rd.getTransform();
+            img = Utils.createTranslucentImage(gc, w, h,
+                    Math.abs(tx.getScaleX()), Math.abs(tx.getScaleY()));
+            paintCachedImage(img, step);
+            cache[step] = img;
+        }
+        return img;
+    }
+    
+    /**
+     * Paints the contents of this notification into one of the cached images.
+     * @param img  The image to paint on.
+     * @param step The index of the image in the cache.
+     */
+    private void paintCachedImage(Image img, int step) {
+        Graphics2D g = (Graphics2D)img.getGraphics();
+        int iw = img.getWidth(null), ih = img.getHeight(null);
+        if (iw != w || ih != h) g.scale((double)iw / w, (double)ih / h);
+        if (img instanceof VolatileImage) {
+            //Restored contents are undefined
+            g.setComposite(AlphaComposite.Clear);
+            g.fillRect(0, 0, w, h);
+            g.setComposite(AlphaComposite.SrcOver);
+        }
+        paintContents(g, step * HOVER_STEP);
+        g.dispose();
+    }
+    
+    /**
+     * Drops the cached images of this notification, so they get painted again
+     * the next time they're needed.
+     */
+    protected void flushCache() {
+        if (cache != null) {
+            for (Image img : cache) {
+                if (img != null) img.flush();
+            }
+            cache = null;
         }
-        rd.setPaint(new GradientPaint(0, (title.isEmpty()? 0:25),
+    }
+    
+    /**
+     * Paints the contents of the notification: background, border, text and
+     * icon. Called only when the cached images need to be refreshed.
+     * @param rd    The <code>Graphics2D</code> object to use for painting.
+     * @param highl The highlight level to paint the background with, from 0
+     *              to 20.
+     */
+    private void paintContents(Graphics2D rd, int highl) {
+        int tier = DesktopNotifyDriver.getQualityTier();
+        rd.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+                tier >= DesktopNotifyDriver.QUALITY_MINIMAL
+                ? RenderingHints.VALUE_TEXT_ANTIALIAS_OFF
+                : RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        if (tier >= DesktopNotifyDriver.QUALITY_FLAT_FILL)
+            rd.setColor(theme.bgGrad[highl+1]);
+        else rd.setPaint(new GradientPaint(0, (title.isEmpty()? 0:25),
                 /*hover? new Color(50,57,65):*/theme.bgGrad[0],
                 0, h, theme.bgGrad[highl+1]/*new Color(theme.bgGrad[0].getRed()+(int)((theme.bgGrad[1].getRed()-theme.bgGrad[0].getRed())*highl/20.0F),
                                 theme.bgGrad[0].getGreen()+(int)((theme.bgGrad[1].getGreen()-theme.bgGrad[0].getGreen())*highl/20.0F),
                                 theme.bgGrad[0].getBlue()+(int)((theme.bgGrad[1].getBlue()-theme.bgGrad[0].getBlue())*highl/20.0F),
                 120+(int)(135*highl/20.0F))*//*hover? new Color(0x3B4B5B):new Color(50,50,50,120)*/, false));
-        if (hover && highl<20) highl++;
-        if (!hover && highl>0) highl--;
         rd.fillRect(0, 0, w, h);
         rd.setPaint(null);
         rd.setColor(theme.borderColor);
         rd.drawRect(0, 0, w-1, h-1);
-        if (i==-1) {
-            int titleH = getLineHeight(theme.titleFont);
-            int textH = getLineHeight(theme.contentFont);
-            if (!title.isEmpty()) {
-                rd.setColor(theme.titleColor);
-                rd.setFont(theme.titleFont);
-                int tX = 5 + ((icon==null && type==0)? 0:38);
-                for (int j = 0; j < tlts.length; j++) {
-                    if (orientation == RIGHT_TO_LEFT) {
-                        FontMetrics ftm = DesktopNotifyDriver.getFontMetrics(theme.titleFont);
-                        tX = w - 4 - ((icon==null && type==0)? 0:38) - ftm.stringWidth(tlts[j]);
-                    }
-                    rd.drawString(tlts[j], tX, 20+(titleH*j));
-                }
-            }
-            if (!message.isEmpty()) {
-                rd.setColor(theme.contentColor);
-                rd.setFont(theme.contentFont);
-                int tX = 6 + ((icon==null && type==0)? 0:38);
-                for (int j = 0; j < msgs.length; j++) {
-                    if (orientation == RIGHT_TO_LEFT) {
-                        FontMetrics ftm = DesktopNotifyDriver.getFontMetrics(theme.contentFont);
-                        tX = w - 5 - ((icon==null && type==0)? 0:38) - ftm.stringWidth(msgs[j]);
-                    }
-                    rd.drawString(msgs[j], tX, 20+(titleH*tlts.length)+(textH*j));
-                }
-            }
+        int titleH = getLineHeight(theme.titleFont);
+        int textH = getLineHeight(theme.contentFont);
+        //The layouts were shaped with antialiasing, which they keep no matter
+        //the hint, so plain strings are drawn when it must be off
+        boolean shaped = tier < DesktopNotifyDriver.QUALITY_MINIMAL;
+        rd.setColor(theme.titleColor);
+        rd.setFont(theme.titleFont);
+        for (int j = 0; j < tltLayouts.length; j++) {
+            if (tltLayouts[j] == null) continue;
+            if (shaped) tltLayouts[j].draw(rd, tltX[j], 20+(titleH*j));
+            else rd.drawString(tlts[j], tltX[j], 20+(titleH*j));
+        }
+        rd.setColor(theme.contentColor);
+        rd.setFont(theme.contentFont);
+        for (int j = 0; j < msgLayouts.length; j++) {
+            if (msgLayouts[j] == null) continue;
+            if (shaped) msgLayouts[j].draw(rd, msgX[j], 20+(titleH*tlts.length)+(textH*j));
+            else rd.drawString(msgs[j], msgX[j], 20+(titleH*tlts.length)+(textH*j));
         }
 //        if(expTime()==Long.MAX_VALUE){
 //            rd.setFont(theme.titleFont);
@@ -481,8 +930,18 @@ public class DesktopNotify {
         if (icon != null) {
             rd.drawImage(icon, orientation == RIGHT_TO_LEFT ? (w - 7 - 32) : 6, (h/2)-15, 32, 32, null);
         }
-        rd.setTransform(trans);
-        rd.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER));
+        if (shownOccurrences > 1) {
+            //Badge with the amount of duplicates, at the top corner
+            String badge = "x" + shownOccurrences;
+            FontMetrics ftm = DesktopNotifyDriver.getFontMetrics(theme.contentFont);
+            int bw = ftm.stringWidth(badge) + 8, bh = ftm.getAscent() + 2;
+            int bx = orientation == RIGHT_TO_LEFT ? 4 : w - bw - 4;
+            rd.setColor(theme.borderColor);
+            rd.fillRoundRect(bx, 4, bw, bh, 8, 8);
+            rd.setColor(theme.titleColor);
+            rd.setFont(theme.contentFont);
+            rd.drawString(badge, bx + 4, 4 + ftm.getAscent());
+        }
     }
     
     private int getLineHeight(Font font) {
@@ -495,37 +954,63 @@ public class DesktopNotify {
      * notification. It is called by the {@link DesktopNotifyDriver}.
      */
     protected void sortMessage() {
-        if (!title.isEmpty()) tlts = splitLines(title, theme.titleFont);
-        if (!message.isEmpty()) msgs = splitLines(message, theme.contentFont);
+        int iconW = (icon==null && type==0)? 0:38;
+        if (!title.isEmpty()) {
+            tlts = splitLines(title, theme.titleFont);
+            tltLayouts = shapeLines(tlts, theme.titleFont);
+            tltX = alignLines(tltLayouts, 5 + iconW, w - 4 - iconW);
+        }
+        if (!message.isEmpty()) {
+            msgs = splitLines(message, theme.contentFont);
+            msgLayouts = shapeLines(msgs, theme.contentFont);
+            msgX = alignLines(msgLayouts, 6 + iconW, w - 5 - iconW);
+        }
         h = 15 + (getLineHeight(theme.titleFont)*tlts.length)
                 + (getLineHeight(theme.contentFont)*msgs.length);
+        flushCache();
     }
     
     private String[] splitLines(String in, Font font) {
-        String[] out;
-        ArrayList<String> list=new ArrayList();
-        String[] strs=in.split("\n");
-        StringBuilder builder = new StringBuilder();
-        FontMetrics ftm = DesktopNotifyDriver.getFontMetrics(font);
-        for(String str:strs){
-            String[] words=str.split(" ");
-            for(String word:words){
-                //System.out.println(str);
-                //System.out.println(ftm.stringWidth(builder.toString())+"+"+ftm.stringWidth(str)+"<"+(w-10));
-                if (ftm.stringWidth(builder.toString()) + ftm.stringWidth(word)
-                        < (w-12-((icon==null && type==0)? 0:38))){
-                    builder.append(word).append(" ");
-                } else {
-                    list.add(builder.toString());
-                    builder=new StringBuilder().append(word).append(" ");
-                }
+        return LineBreaker.split(in, font, w-12-((icon==null && type==0)? 0:38));
+    }
+    
+    /**
+     * Shapes the given lines of text, so they can be drawn later without
+     * being measured or laid out again.
+     * @param lines The lines of text.
+     * @param font  The font to use.
+     * @return The shaped lines, with {@code null} in place of empty ones.
+     */
+    private TextLayout[] shapeLines(String[] lines, Font font) {
+        FontRenderContext frc = DesktopNotifyDriver.getFontMetrics(font)
+                .getFontRenderContext();
+        TextLayout[] layouts = new TextLayout[lines.length];
+        for (int j = 0; j < lines.length; j++) {
+            if (!lines[j].isEmpty())
+                layouts[j] = new TextLayout(lines[j], font, frc);
+        }
+        return layouts;
+    }
+    
+    /**
+     * Works out where each line of text starts, depending on the text
+     * orientation.
+     * @param layouts The shaped lines.
+     * @param left    The left margin, for left-to-right text.
+     * @param right   The right margin, for right-to-left text.
+     * @return The horizontal position of each line.
+     */
+    private int[] alignLines(TextLayout[] layouts, int left, int right) {
+        int[] xs = new int[layouts.length];
+        for (int j = 0; j < layouts.length; j++) {
+            if (orientation == RIGHT_TO_LEFT) {
+                xs[j] = right - (layouts[j] == null ? 0
+                        : Math.round(layouts[j].getAdvance()));
+            } else {
+                xs[j] = left;
             }
-            list.add(builder.toString());
-            builder.setLength(0);
         }
-        out = new String[list.size()];
-        out = list.toArray(out);
-        return out;
+        return xs;
     }
     
     // Integrated Logging
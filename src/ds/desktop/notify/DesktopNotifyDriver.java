@@ -6,17 +6,30 @@ package ds.desktop.notify;
 
 import java.awt.Color;
 import java.awt.Cursor;
+import java.awt.DisplayMode;
 import java.awt.Font;
 import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Image;
-import java.awt.Point;
 import java.awt.Rectangle;
+import java.awt.RenderingHints;
 import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.awt.event.MouseMotionAdapter;
+import java.awt.image.BufferStrategy;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.swing.JComponent;
 import javax.swing.JDialog;
 import javax.swing.JFrame;
@@ -27,39 +40,710 @@ import javax.swing.JFrame;
  */
 public final class DesktopNotifyDriver {
     /**
-     * The list of notifications currently on queue.
+     * Frame rate value that makes the driver match the refresh rate of the
+     * display the notifications are being shown in.
      */
-    static ArrayList<DesktopNotify> windows=new ArrayList();
+    public static final int DISPLAY_REFRESH_RATE = 0;
     /**
-     * The window used to show the notifications.
+     * The frame rate used when none is set, or when the refresh rate of the
+     * display can't be determined.
      */
-    static DesktopLayoutFrame frame;
+    public static final int DEFAULT_FRAME_RATE = 50;
+    /**
+     * The time the driver waits for new notifications after showing the last
+     * one, if no other is set, in milliseconds.
+     */
+    public static final long DEFAULT_IDLE_GRACE_PERIOD = 5000L;
+    /** Quality tier: everything is painted as designed. */
+    public static final int QUALITY_FULL = 0;
+    /** Quality tier: animations run at half the frame rate. */
+    public static final int QUALITY_LOW_FPS = 1;
+    /**
+     * Quality tier: like {@link #QUALITY_LOW_FPS}, and notifications are
+     * filled with a flat color instead of a gradient.
+     */
+    public static final int QUALITY_FLAT_FILL = 2;
+    /**
+     * Quality tier: like {@link #QUALITY_FLAT_FILL}, and notifications only
+     * fade in and out, without scaling.
+     */
+    public static final int QUALITY_NO_SCALING = 3;
+    /**
+     * Quality tier: like {@link #QUALITY_NO_SCALING}, and text is painted
+     * without antialiasing.
+     */
+    public static final int QUALITY_MINIMAL = 4;
+    /** Overflow policy: new posts are rejected while the queue is full. */
+    public static final int OVERFLOW_REJECT = 0;
+    /** Overflow policy: the oldest notification queued is dropped. */
+    public static final int OVERFLOW_DROP_OLDEST = 1;
+    /**
+     * Overflow policy: the notification queued with the lowest priority is
+     * dropped, the newest one if there are many. A post with a priority as
+     * low is dropped instead.
+     */
+    public static final int OVERFLOW_DROP_LOWEST = 2;
+    /**
+     * Overflow policy: the thread posting waits for room, for a limited time.
+     * It is rejected if the time runs out.
+     */
+    public static final int OVERFLOW_BLOCK = 3;
+    
+    /**
+     * The notifications currently on screen, from the bottom up. It belongs
+     * to the thread running the frame updates, no other thread may touch it.
+     */
+    static final ArrayList<DesktopNotify> windows = new ArrayList<DesktopNotify>();
+    /**
+     * The notifications posted that aren't on screen yet, the highest
+     * priority first and then in the order they were posted. The frame
+     * updates only look at its head, and only when there's room for it, so a
+     * long backlog doesn't make frames any slower.
+     */
+    static final PendingQueue pending = new PendingQueue();
+    /**
+     * Notifications with this priority or a higher one, if there's no room
+     * for them, make older notifications with a lower priority go away.
+     */
+    private static volatile int preemptionPriority = Integer.MAX_VALUE;
+    /**
+     * The window used to show the notifications. It is deployed and disposed
+     * by the driver thread.
+     */
+    static volatile DesktopLayoutFrame frame;
     /**
      * The DesktopNotify driver Thread.
      */
-    static volatile Thread tredo;
+    static final AtomicReference<Thread> tredo = new AtomicReference<Thread>();
+    /**
+     * The monitor the driver thread waits on while there's nothing to animate.
+     */
+    private static final Object lock = new Object();
+    /**
+     * Set when something happened that may need a new frame to be painted.
+     */
+    private static boolean frameRequested = false;
+    /**
+     * The frame rate requested, in frames per second.
+     */
+    private static volatile int frameRate = DEFAULT_FRAME_RATE;
+    /**
+     * The maximum frame rate allowed, in frames per second.
+     */
+    private static volatile int maxFrameRate = 120;
+    /**
+     * The time between frames currently in effect, in nanoseconds.
+     */
+    private static volatile long framePeriod = 1000000000L / DEFAULT_FRAME_RATE;
+    /**
+     * Set if the notifications should be painted by the driver thread itself.
+     */
+    private static volatile boolean activeRendering = false;
+    /**
+     * The time the driver thread and its window are kept around once there
+     * are no notifications left to show, in milliseconds.
+     */
+    private static volatile long idleGracePeriod = DEFAULT_IDLE_GRACE_PERIOD;
+    /**
+     * Set if the quality should be lowered when frames take too long to
+     * paint.
+     */
+    private static volatile boolean adaptiveQuality = true;
+    /**
+     * Picks the quality tier from the time it takes to paint frames.
+     */
+    static final QualityGovernor governor = new QualityGovernor();
+    /**
+     * Set if duplicates of queued or visible notifications should be counted
+     * on them instead of being shown.
+     */
+    private static volatile boolean coalescing = false;
+    /**
+     * The queued or visible notifications that take duplicates, by key.
+     */
+    private static final ConcurrentHashMap<Object, DesktopNotify> live =
+            new ConcurrentHashMap<Object, DesktopNotify>();
+    /**
+     * Limits the rate at which each source can post notifications.
+     */
+    private static final RateLimiter limiter = new RateLimiter();
+    /**
+     * The executor that runs the actions of notifications that don't have
+     * one of their own.
+     */
+    private static volatile Executor actionExecutor = ActionExecutors.eventThread();
+    /**
+     * The painting statistics.
+     */
+    static final DriverStats stats = new DriverStats();
+    /**
+     * The maximum amount of notifications waiting to be laid out in the
+     * background. Past this, the threads posting them lay them out by
+     * themselves, so a flood of posts can't pile up without bounds.
+     */
+    private static final int MAX_LAYOUTS_IN_FLIGHT = 512;
+    /**
+     * The pool that measures and wraps the text of posted notifications. It
+     * is created the first time it is needed.
+     */
+    private static ForkJoinPool layoutPool;
+    /**
+     * The amount of notifications handed to the layout pool and not laid out
+     * yet.
+     */
+    private static final AtomicInteger layoutsInFlight = new AtomicInteger();
 
     private DesktopNotifyDriver() {}
     
     /**
      * Invoked by DesktopNotify, adds a notification to the queue. Notifications
      * are shown only when there is room for them to fit in the screen.
+     * <p>
+     * The text is laid out in the background, so this method returns right
+     * away. The notification keeps its place in the queue, but it doesn't get
+     * on screen until it is laid out.
      * 
      * @param window a <code>DesktopNotify</code> object
      */
-    protected static void postPane(DesktopNotify window){
-        if(frame==null){
-            boolean bool = JDialog.isDefaultLookAndFeelDecorated();
-            JDialog.setDefaultLookAndFeelDecorated(false);
-            frame = new DesktopLayoutFrame();
-            JDialog.setDefaultLookAndFeelDecorated(bool);
-        }
-        if(!frame.isVisible()) frame.setVisible(true);
-        window.setWidth(300);
-        window.sortMessage();
-        window.setVisible(true);
-        windows.add(window);
+    protected static void postPane(final DesktopNotify window){
+        if (!prepare(window)) return;
+        DesktopNotify out = pending.offer(window);
+        if (out != null) dismiss(out);
+        if (out == window) return;
         sparkControlThread();
+        if (layoutsInFlight.incrementAndGet() > MAX_LAYOUTS_IN_FLIGHT) {
+            layoutsInFlight.decrementAndGet();
+            layOut(window, true);
+            return;
+        }
+        getLayoutPool().execute(new Runnable() {
+            @Override
+            public void run() {
+                layoutsInFlight.decrementAndGet();
+                layOut(window, true);
+            }
+        });
+    }
+    
+    /**
+     * Invoked by DesktopNotify, adds many notifications to the queue at once.
+     * They're laid out together in the background, and this method waits for
+     * it. Then they're all queued in one go and the driver is woken up once
+     * more, so they reach the screen together, as long as they fit.
+     * <p>
+     * The driver is started and woken up before queueing, since it is the one
+     * making room if the queue is full and the batch has to wait for it. It is
+     * started again after queueing, in case it ran out of work and quit
+     * while the batch was waiting.
+     * 
+     * @param batch The notifications to show.
+     */
+    static void postPanes(Collection<DesktopNotify> batch) {
+        for (DesktopNotify window : batch) {
+            if (window == null)
+                throw new IllegalArgumentException("The batch contains a "
+                        + "null notification");
+        }
+        ArrayList<DesktopNotify> queued = new ArrayList<DesktopNotify>(batch.size());
+        for (DesktopNotify window : batch) {
+            window.markedForHide = false;
+            if (prepare(window)) queued.add(window);
+        }
+        if (queued.isEmpty()) return;
+        ForkJoinPool pool = getLayoutPool();
+        ArrayList<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>(queued.size());
+        for (final DesktopNotify window : queued) {
+            tasks.add(pool.submit(new Runnable() {
+                @Override
+                public void run() {
+                    layOut(window, false);
+                }
+            }));
+        }
+        for (ForkJoinTask<?> task : tasks) task.join();
+        sparkControlThread();
+        requestFrame();
+        for (DesktopNotify out : pending.offerAll(queued)) dismiss(out);
+        sparkControlThread();
+        requestFrame();
+    }
+    
+    /**
+     * Gets a notification ready to be queued, unless it goes over the rate
+     * limit of its source or it is taken as a duplicate.
+     * @param window The notification being posted.
+     * @return <code>true</code> if it must be queued.
+     */
+    private static boolean prepare(DesktopNotify window) {
+        if (!limiter.admit(window)) return false;
+        synchronized (window) {
+            //It must be ready before other posts can count on it
+            window.occurrences = 1;
+            window.shownOccurrences = 1;
+            window.baseTimeOut = window.timeOut;
+            window.closing = false;
+            window.setWidth(300);
+            window.laidOut = false;
+            window.postTime = System.nanoTime();
+            window.setVisible(true);
+        }
+        if (!coalescing) {
+            window.liveKey = null;
+        } else if (coalesce(window)) {
+            window.setVisible(false);
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Counts a post as a new occurrence of a queued or visible notification
+     * with the same key, if there's any. Otherwise, the notification is
+     * registered to take the duplicates that come after it. It is registered
+     * under its own lock, the one {@link DesktopNotify#addOccurrence()} takes.
+     * @param window The notification being posted, already made visible.
+     * @return <code>true</code> if it was taken as a duplicate, so it must
+     *         not be queued.
+     */
+    private static boolean coalesce(DesktopNotify window) {
+        Object key = window.contentKey();
+        for (;;) {
+            DesktopNotify existing;
+            synchronized (window) {
+                existing = live.putIfAbsent(key, window);
+                if (existing == null || existing == window) {
+                    window.liveKey = key;
+                    return false;
+                }
+            }
+            if (existing.addOccurrence()) {
+                stats.coalesced();
+                requestFrame();
+                return true;
+            }
+            //It is going away, take its place
+            live.remove(key, existing);
+        }
+    }
+    
+    /**
+     * Hides a notification for good and stops taking duplicates for it.
+     * @param window The notification.
+     */
+    private static void dismiss(DesktopNotify window) {
+        window.dismiss();
+        Object key = window.liveKey;
+        if (key != null) {
+            live.remove(key, window);
+            window.liveKey = null;
+        }
+    }
+    
+    /**
+     * Allows duplicates to be coalesced. A notification posted while another
+     * one with the same title, message and type, or the same coalesce key, is
+     * queued or on screen isn't shown. The occurrences of the first one are
+     * counted instead, shown in a badge, and its timeout starts over.
+     * It is disabled by default.
+     * @param coalesce <code>true</code> to coalesce duplicates.
+     * @see DesktopNotify#setCoalesceKey(Object)
+     * @see DesktopNotify#getOccurrences()
+     */
+    public static void setCoalescing(boolean coalesce) {
+        coalescing = coalesce;
+    }
+    
+    /**
+     * @return <code>true</code> if duplicates are coalesced.
+     */
+    public static boolean isCoalescing() {
+        return coalescing;
+    }
+    
+    /**
+     * Limits the rate at which each source can post notifications. Every
+     * source gets a bucket that holds up to <code>burst</code> posts and is
+     * refilled at <code>postsPerSecond</code>. Posts from a source with an
+     * empty bucket aren't shown. They're summed up in a single
+     * "N more from source" notification, posted once per digest interval.
+     * Notifications without a source are never limited. By default, there
+     * is no limit.
+     * @param postsPerSecond The posts allowed per second and source, or 0 for
+     *                       no limit.
+     * @param burst          The posts allowed at once from a source.
+     * @see DesktopNotify#setSource(String)
+     * @see #setDigestInterval(long)
+     */
+    public static void setRateLimit(double postsPerSecond, int burst) {
+        if (postsPerSecond > 0 && burst < 1)
+            throw new IllegalArgumentException("Invalid burst: " + burst);
+        limiter.setDefaultLimit(postsPerSecond, burst);
+    }
+    
+    /**
+     * Sets the rate limit for a single source, instead of the one set with
+     * {@link #setRateLimit(double, int)}.
+     * @param source         The source.
+     * @param postsPerSecond The posts allowed per second, or 0 to use the
+     *                       limit set for every source.
+     * @param burst          The posts allowed at once.
+     */
+    public static void setRateLimit(String source, double postsPerSecond,
+            int burst) {
+        if (source == null)
+            throw new IllegalArgumentException("The source can't be null");
+        if (postsPerSecond > 0 && burst < 1)
+            throw new IllegalArgumentException("Invalid burst: " + burst);
+        limiter.setLimit(source, postsPerSecond, burst);
+    }
+    
+    /**
+     * Sets how often the posts held back from a rate limited source are
+     * summed up in a notification. By default, it is 5 seconds.
+     * @param millis The time between digests, in milliseconds.
+     */
+    public static void setDigestInterval(long millis) {
+        if (millis <= 0)
+            throw new IllegalArgumentException("Invalid interval: " + millis);
+        limiter.setDigestInterval(millis);
+    }
+    
+    /**
+     * @return The time between digests of the posts held back from a rate
+     *         limited source, in milliseconds.
+     */
+    public static long getDigestInterval() {
+        return limiter.getDigestInterval();
+    }
+    
+    /**
+     * Limits the amount of notifications waiting for room on screen. When a
+     * post doesn't fit, the overflow policy decides what is left out, and it
+     * is counted in the stats. By default, the queue has no limit.
+     * <p>
+     * With {@link #OVERFLOW_BLOCK}, the thread posting waits for room. Never
+     * post from the event dispatch thread with this policy: room is made by
+     * the frame updates, which may run in that very thread.
+     * @param capacity     The notifications that can be queued, or
+     *                     <code>Integer.MAX_VALUE</code> for no limit.
+     * @param policy       What to do when the queue is full, like
+     *                     {@link #OVERFLOW_DROP_OLDEST}.
+     * @param blockTimeout The maximum time to wait with
+     *                     {@link #OVERFLOW_BLOCK}, in milliseconds.
+     */
+    public static void setQueueCapacity(int capacity, int policy,
+            long blockTimeout) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        if (policy < OVERFLOW_REJECT || policy > OVERFLOW_BLOCK)
+            throw new IllegalArgumentException("Invalid policy: " + policy);
+        if (blockTimeout < 0)
+            throw new IllegalArgumentException("Invalid timeout: " + blockTimeout);
+        pending.setCapacity(capacity, policy, blockTimeout);
+    }
+    
+    /**
+     * @return The notifications that can be waiting for room on screen.
+     */
+    public static int getQueueCapacity() {
+        return pending.getCapacity();
+    }
+    
+    /**
+     * @return What is done with posts that don't fit in the queue.
+     */
+    public static int getOverflowPolicy() {
+        return pending.getPolicy();
+    }
+    
+    /**
+     * @return The notifications currently waiting for room on screen.
+     */
+    public static int getQueuedCount() {
+        return pending.size();
+    }
+    
+    /**
+     * Lets important notifications make room for themselves. When one with
+     * at least the given priority doesn't fit on screen, the oldest one shown
+     * with a lower priority fades out early, even if it was waiting for a
+     * click. By default, nothing is preempted.
+     * @param priority The lowest priority allowed to preempt, like
+     *                 {@link DesktopNotify#PRIORITY_CRITICAL}, or
+     *                 <code>Integer.MAX_VALUE</code> to preempt nothing.
+     */
+    public static void setPreemptionPriority(int priority) {
+        preemptionPriority = priority;
+    }
+    
+    /**
+     * @return The lowest priority allowed to preempt notifications on screen.
+     */
+    public static int getPreemptionPriority() {
+        return preemptionPriority;
+    }
+    
+    /**
+     * @return The pool used to lay out notifications.
+     */
+    private static synchronized ForkJoinPool getLayoutPool() {
+        if (layoutPool == null) layoutPool = new ForkJoinPool();
+        return layoutPool;
+    }
+    
+    /**
+     * Measures and wraps the text of a notification, and lets the driver know
+     * it can be shown. A notification that fails to be laid out is hidden.
+     * @param window The notification.
+     * @param wake   <code>true</code> to wake the driver up afterwards.
+     */
+    private static void layOut(DesktopNotify window, boolean wake) {
+        try {
+            window.sortMessage();
+        } catch (RuntimeException ex) {
+            DesktopNotify.logError("NotifyDriver", "Unable to lay out a "
+                    + "notification", ex);
+            window.visible = false;
+        } finally {
+            window.laidOut = true;
+            if (wake) requestFrame();
+        }
+    }
+    
+    /**
+     * Wakes the driver thread up, so a new frame gets painted. Call it whenever
+     * something happened that may change what's on screen, like a new
+     * notification, a hover or click, or a notification being hidden.
+     */
+    static void requestFrame() {
+        synchronized (lock) {
+            frameRequested = true;
+            lock.notifyAll();
+        }
+    }
+    
+    /**
+     * Sets the frame rate to aim for while animating notifications. By default
+     * it is {@link #DEFAULT_FRAME_RATE}.
+     * @param fps The frame rate, in frames per second, or
+     *            {@link #DISPLAY_REFRESH_RATE} to match the refresh rate of the
+     *            display. It's always limited by {@link #getMaxFrameRate()}.
+     */
+    public static void setFrameRate(int fps) {
+        if (fps < 0)
+            throw new IllegalArgumentException("The frame rate can't be negative!");
+        frameRate = fps;
+        updateFramePeriod();
+    }
+    
+    /**
+     * @return The frame rate requested, in frames per second, or
+     *         {@link #DISPLAY_REFRESH_RATE}.
+     */
+    public static int getFrameRate() {
+        return frameRate;
+    }
+    
+    /**
+     * Sets the maximum frame rate allowed while animating notifications. By
+     * default it is 120 FPS.
+     * @param fps The frame rate cap, in frames per second.
+     */
+    public static void setMaxFrameRate(int fps) {
+        if (fps < 1)
+            throw new IllegalArgumentException("The frame rate cap must be positive!");
+        maxFrameRate = fps;
+        updateFramePeriod();
+    }
+    
+    /**
+     * @return The maximum frame rate allowed, in frames per second.
+     */
+    public static int getMaxFrameRate() {
+        return maxFrameRate;
+    }
+    
+    /**
+     * Sets how long the driver waits for new notifications once the last one
+     * is gone. Meanwhile, its thread is kept alive and its window is hidden
+     * but not disposed, so notifications posted in that time get on screen
+     * sooner. By default it is {@link #DEFAULT_IDLE_GRACE_PERIOD}.
+     * @param millis The grace period, in milliseconds, or 0 to let go of the
+     *               thread and the window right away.
+     */
+    public static void setIdleGracePeriod(long millis) {
+        if (millis < 0)
+            throw new IllegalArgumentException("Invalid grace period: " + millis);
+        idleGracePeriod = millis;
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+    }
+    
+    /**
+     * @return How long the driver waits for new notifications once the last
+     *         one is gone, in milliseconds.
+     */
+    public static long getIdleGracePeriod() {
+        return idleGracePeriod;
+    }
+    
+    /**
+     * Allows to choose who paints the notifications. By default they're
+     * painted by the AWT event thread, like any other Swing component. With
+     * active rendering, the driver thread paints them directly through a
+     * <code>BufferStrategy</code>, leaving the event thread free for the rest
+     * of the application.<br/>
+     * Since buffer strategies can't be used with per-pixel translucent windows,
+     * the translucency is faked with a capture of the desktop in this mode.
+     * If the buffer strategy can't be created, the notifications will be
+     * painted by the event thread instead.<br/>
+     * The setting takes effect the next time the notification window is
+     * deployed.
+     * @param active <code>true</code> to use active rendering.
+     */
+    public static void setActiveRendering(boolean active) {
+        activeRendering = active;
+    }
+    
+    /**
+     * @return <code>true</code> if active rendering was requested.
+     * @see #setActiveRendering(boolean)
+     */
+    public static boolean isActiveRendering() {
+        return activeRendering;
+    }
+    
+    /**
+     * Sets the executor that runs the actions of clicked notifications, for
+     * those that don't have one of their own. By default actions run in the
+     * event dispatch thread.
+     * @param executor The executor to use, or <code>null</code> to go back to
+     *                 the default.
+     * @see ActionExecutors
+     * @see DesktopNotify#setActionExecutor(Executor)
+     */
+    public static void setActionExecutor(Executor executor) {
+        actionExecutor = executor == null ? ActionExecutors.eventThread() : executor;
+    }
+    
+    /**
+     * @return The executor that runs the actions of clicked notifications
+     *         that don't have one of their own.
+     */
+    public static Executor getActionExecutor() {
+        return actionExecutor;
+    }
+    
+    /**
+     * Runs the action of a clicked notification through its executor. The
+     * time it waited to start and the time it took to run are recorded in
+     * the stats.
+     * @param window The notification.
+     * @param when   The time of the click, as given by the mouse event.
+     */
+    static void runAction(final DesktopNotify window, final long when) {
+        final ActionListener action = window.getAction();
+        if (action == null) return;
+        Executor executor = window.getActionExecutor();
+        if (executor == null) executor = actionExecutor;
+        final long dispatched = System.nanoTime();
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    long start = System.nanoTime();
+                    try {
+                        action.actionPerformed(new ActionEvent(window,
+                                ActionEvent.ACTION_PERFORMED, "fireAction", when, 0));
+                    } catch (RuntimeException ex) {
+                        DesktopNotify.logError("NotifyDriver", "Error while "
+                                + "running the action of a notification", ex);
+                    } finally {
+                        stats.actionRun(start - dispatched, System.nanoTime() - start);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            DesktopNotify.logError("NotifyDriver", "The action of a "
+                    + "notification was rejected by its executor", ex);
+        }
+    }
+    
+    /**
+     * Gathers the painting statistics collected so far, like the time spent
+     * painting each frame, the frames that weren't painted in time and the
+     * effective frame rate.
+     * @return A snapshot of the current statistics.
+     */
+    public static DriverStats getStats() {
+        return stats.snapshot();
+    }
+    
+    /**
+     * Allows the driver to lower the quality of the animations when frames
+     * take too long to paint, like on remote desktops or without graphics
+     * acceleration. The quality goes down one tier at a time, and back up
+     * once there's room to spare. It is enabled by default.
+     * @param adaptive <code>true</code> to adapt the quality, <code>false</code>
+     *                 to always paint at full quality.
+     * @see #getQualityTier()
+     */
+    public static void setAdaptiveQuality(boolean adaptive) {
+        adaptiveQuality = adaptive;
+        if (!adaptive && governor.getTier() != QUALITY_FULL) {
+            governor.reset();
+            qualityChanged();
+        }
+    }
+    
+    /**
+     * @return <code>true</code> if the quality of the animations is adapted
+     *         to the time it takes to paint frames.
+     */
+    public static boolean isAdaptiveQuality() {
+        return adaptiveQuality;
+    }
+    
+    /**
+     * @return The quality tier in use, from {@link #QUALITY_FULL} to
+     *         {@link #QUALITY_MINIMAL}.
+     * @see #setAdaptiveQuality(boolean)
+     */
+    public static int getQualityTier() {
+        return governor.getTier();
+    }
+    
+    /**
+     * Applies a new quality tier: the frame rate is worked out again and the
+     * notifications on screen are painted again.
+     */
+    private static void qualityChanged() {
+        int tier = governor.getTier();
+        stats.setQualityTier(tier);
+        DesktopNotify.logDebug("NotifyDriver", "Quality tier set to " + tier + ".");
+        updateFramePeriod();
+        DesktopLayoutFrame frm = frame;
+        if (frm != null) frm.repaintAll = true;
+        requestFrame();
+    }
+    
+    /**
+     * Works out the time between frames from the frame rate settings and, if
+     * requested, the refresh rate of the display.
+     */
+    private static void updateFramePeriod() {
+        int fps = frameRate;
+        if (fps == DISPLAY_REFRESH_RATE) {
+            DesktopLayoutFrame frm = frame;
+            fps = frm == null ? DisplayMode.REFRESH_RATE_UNKNOWN
+                    : Utils.getRefreshRate(frm.getGraphicsConfiguration().getDevice());
+            if (fps == DisplayMode.REFRESH_RATE_UNKNOWN) fps = DEFAULT_FRAME_RATE;
+        }
+        fps = Math.min(fps, maxFrameRate);
+        if (governor.getTier() >= QUALITY_LOW_FPS) fps = Math.max(1, fps / 2);
+        stats.setFrameRate(fps);
+        framePeriod = 1000000000L / fps;
     }
     
     /**
@@ -67,139 +751,709 @@ public final class DesktopNotifyDriver {
      * necessary.
      */
     private static void sparkControlThread(){
-        if(tredo == null){
-            tredo = new Thread(new Runnable(){@Override public void run() {
-                DesktopNotify.logDebug("NotifyDriver", Thread.currentThread().getName()+" started.");
-                frame.finished = false;
-                while (!frame.finished) {
-                    frame.repaint();
-                    try{
-                        Thread.sleep(20); //FPS> 10:Super-high, 20: High, 40: Normal, 80: Low
-                    }catch(InterruptedException ex){}
-                }
-                frame.dispose();
-                tredo = null;
-                DesktopNotify.logDebug("NotifyDriver", Thread.currentThread().getName()+" finished.");
-            }},"DesktopNotify Driver Thread");
-            tredo.start();
+        if (tredo.get() == null) {
+            Thread thread = new Thread(driverLoop, "DesktopNotify Driver Thread");
+            if (tredo.compareAndSet(null, thread)) thread.start();
+        }
+    }
+    
+    /**
+     * The routine run by the driver thread. It deploys the notification
+     * window, keeps requesting frames while there are notifications to show
+     * and hides the window once they're all gone. The window is disposed if
+     * nothing else is posted during the idle grace period.
+     */
+    private static final Runnable driverLoop = new Runnable() {
+        @Override
+        public void run() {
+            DesktopNotify.logDebug("NotifyDriver", Thread.currentThread().getName()+" started.");
+            do {
+                boolean bool = JDialog.isDefaultLookAndFeelDecorated();
+                JDialog.setDefaultLookAndFeelDecorated(false);
+                DesktopLayoutFrame frm = new DesktopLayoutFrame();
+                JDialog.setDefaultLookAndFeelDecorated(bool);
+                boolean warm = false;
+                do {
+                    frm.starting(warm);
+                    frm.setVisible(true);
+                    frame = frm;
+                    drive(frm);
+                    frm.setVisible(false);
+                    warm = true;
+                } while (awaitPosts());
+                frame = null;
+                frm.dispose();
+                tredo.set(null);
+                //Anything posted right before letting go of the thread will be
+                //taken by this one, unless a new thread was already started
+            } while (!pending.isEmpty()
+                     && tredo.compareAndSet(null, Thread.currentThread()));
+            DesktopNotify.logDebug("NotifyDriver", Thread.currentThread().getName()+" finished.");
         }
+    };
+    
+    /**
+     * Waits for new notifications during the idle grace period.
+     * @return <code>true</code> if something was posted in time.
+     */
+    private static boolean awaitPosts() {
+        long start = System.currentTimeMillis();
+        synchronized (lock) {
+            while (pending.isEmpty()) {
+                long wait = start + idleGracePeriod - System.currentTimeMillis();
+                if (wait <= 0) return false;
+                try {
+                    lock.wait(wait);
+                } catch (InterruptedException ex) {
+                    return false;
+                }
+            }
+        }
+        return true;
     }
+    
+    /**
+     * Keeps requesting frames until there are no more notifications to show.
+     * @param frame The notification window.
+     */
+    private static void drive(DesktopLayoutFrame frame) {
+        frame.finished = false;
+        updateFramePeriod();
+        long deadline = System.nanoTime();
+        while (!frame.finished) {
+            //With active rendering the frame is painted right here
+            boolean active = frame.strategy != null;
+            long frameId = frame.requestUpdate();
+            deadline += framePeriod;
+            try{
+                //Sleep until the next frame is due, no matter how long
+                //it took to request this one
+                long now = System.nanoTime();
+                if (deadline > now) {
+                    Thread.sleep((deadline - now) / 1000000L,
+                                 (int)((deadline - now) % 1000000L));
+                } else {
+                    //Painted too late, if it was painted already
+                    if (active) stats.deadlineMissed();
+                    deadline = now;
+                }
+                if (!active && frame.updated < frameId) stats.deadlineMissed();
+                synchronized (lock) {
+                    //Sleep until the next expiry or input event if
+                    //nothing is moving on screen
+                    if (!frameRequested && frame.isIdle(frameId)) {
+                        stats.idle();
+                        long wait = frame.nextWake - System.currentTimeMillis();
+                        if (frame.nextWake == Long.MAX_VALUE) lock.wait();
+                        else if (wait > 0) lock.wait(wait);
+                        deadline = System.nanoTime();
+                    }
+                    frameRequested = false;
+                }
+            }catch(InterruptedException ex){}
+        }
+    }
+
+    /**
+     * The FontMetrics gathered so far, one per Font. They are all taken for
+     * the render context used to paint the notifications: antialiased text
+     * with integer metrics.
+     */
+    private static final ConcurrentHashMap<Font, FontMetrics> metrics =
+            new ConcurrentHashMap<Font, FontMetrics>();
 
     /**
      * Utilitary method for gathering the FontMetrics of a given Font.
-     * Made because of laziness.
+     * Metrics are cached, and they don't depend on the notification window,
+     * so text can be measured before it is deployed.
      * @param font A Font.
      * @return     The FontMetrics in effect for the selected font.
      */
     protected static FontMetrics getFontMetrics(Font font) {
-        return frame.getGraphics().getFontMetrics(font);
+        FontMetrics ftm = metrics.get(font);
+        if (ftm == null) {
+            Graphics2D g = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB)
+                    .createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+                    RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            ftm = g.getFontMetrics(font);
+            g.dispose();
+            FontMetrics prev = metrics.putIfAbsent(font, ftm);
+            if (prev != null) ftm = prev;
+        }
+        return ftm;
     }
     
     /**
      * An undecorated JDialog used to show all the notifications on screen.
      */
     private static class DesktopLayoutFrame extends JDialog {
+        /**
+         * The steps the window is resized in, in pixels, so it isn't resized
+         * for every small change in the stack.
+         */
+        private static final int RESIZE_STEP = 64;
+        
         Image bg;
         boolean nativeTrans;
+        /**
+         * The area of the screen the notifications are stacked in. The window
+         * only covers the part of it that holds notifications. Positions in
+         * the stack are relative to it.
+         */
+        private final Rectangle column = new Rectangle();
+        /** Where the window starts within the column. */
+        private volatile int top = 0;
+        /** The top of the highest notification in the update in progress. */
+        private int stackMin;
+        /** The buffers used for active rendering, if any. */
+        volatile BufferStrategy strategy;
+        
+        volatile boolean finished=true;
         
-        boolean finished=true;
-        boolean clicked=false;
+        /** The id of the last frame requested by the driver thread. */
+        private volatile long requested = 0;
+        /** The id of the last frame requested when an update took place. */
+        volatile long updated = 0;
+        /** Set while there's an update waiting to run in the event thread. */
+        private volatile boolean updatePending = false;
+        /** The top of the area to repaint after the current update. */
+        private int dirtyTop = Integer.MAX_VALUE;
+        /** The bottom of the area to repaint after the current update. */
+        private int dirtyBottom = Integer.MIN_VALUE;
+        /** Set while the mouse pointer is over the window. */
+        private volatile boolean mouseInside = false;
+        /** The last vertical position of the mouse pointer over the window. */
+        private volatile int mouseY = 0;
+        /**
+         * Set while the window is being shown and its first notification
+         * wasn't painted yet.
+         */
+        private boolean starting = false;
+        /** Set if the window being shown was kept from a previous burst. */
+        private boolean warmStart = false;
+        /**
+         * When the first notification painted after showing the window was
+         * posted, or 0 if it was painted already or there isn't one yet.
+         */
+        private long firstPost = 0L;
+        /**
+         * Set when every notification on screen must be painted again from
+         * scratch, like after a change of quality.
+         */
+        volatile boolean repaintAll = false;
+        /**
+         * Set when Swing asked for the window to be painted while the driver
+         * paints it, so the next update paints it all.
+         */
+        private volatile boolean exposed = false;
+        /** The last notification made to fade out early, if any. */
+        private DesktopNotify preempted = null;
+        /** The notification under the mouse pointer, if any. */
+        private volatile DesktopNotify hovered = null;
+        /**
+         * Where the notifications on screen are drawn, used to find the one
+         * under the mouse pointer. It is replaced whenever one of them moves,
+         * so it follows them while they slide to new slots.
+         */
+        private volatile HitIndex hitIndex = HitIndex.EMPTY;
+        /** Set when the hit index must be built again. */
+        private boolean indexStale = false;
+        /** The type of cursor currently set for the window. */
+        private int cursorType = Cursor.DEFAULT_CURSOR;
+        /**
+         * The window height the stack was laid out for, or -1 if the layout
+         * must be done again because notifications were removed.
+         */
+        private int layoutHeight = -1;
+        /** The free space left above the stack, as of the last layout. */
+        private int stackTop = 0;
+        /** The notifications on screen that will expire. */
+        private final ExpiryQueue expiries = new ExpiryQueue();
+        /** The notification hovered during the update in progress. */
+        private DesktopNotify hover;
+        /** Set if something is being animated in the update in progress. */
+        private boolean moving;
+        /** Reused to read the clip bounds while painting. */
+        private final Rectangle clip = new Rectangle();
+        /** Runs the updates in the event thread. */
+        private final Runnable updater = new Runnable() {
+            @Override
+            public void run() {
+                updatePending = false;
+                update();
+            }
+        };
+        /** Set if the last painted frame had something being animated. */
+        volatile boolean animating = false;
+        /** The time the next notification will begin to fade out. */
+        volatile long nextWake = Long.MAX_VALUE;
 
         public DesktopLayoutFrame() {
             super((JFrame)null,"DesktopLayoutFrame");
             setUndecorated(true);
-            nativeTrans = Utils.isTranslucencySupported();
+            nativeTrans = !activeRendering && Utils.isTranslucencySupported();
             setBackground(new Color(0,0,0,nativeTrans? 0:255));
             setContentPane(new JComponent(){
                 @Override
                 public void paintComponent(Graphics g){
-                    render((Graphics2D)g);
+                    if (strategy != null) {
+                        //Only the driver thread paints with active rendering
+                        exposed = true;
+                        requestFrame();
+                    } else {
+                        render((Graphics2D)g);
+                    }
                 }
             });
             addMouseListener(new MouseAdapter() {
                 @Override
                 public void mouseClicked(MouseEvent evt){
-                    clicked = true;
+                    click(evt);
+                }
+                @Override
+                public void mouseEntered(MouseEvent evt){
+                    pointerMoved(evt.getY() + top);
+                }
+                @Override
+                public void mouseExited(MouseEvent evt){
+                    mouseInside = false;
+                    if (hovered != null) {
+                        hovered = null;
+                        requestFrame();
+                    }
+                }
+            });
+            addMouseMotionListener(new MouseMotionAdapter() {
+                @Override
+                public void mouseMoved(MouseEvent evt){
+                    pointerMoved(evt.getY() + top);
+                }
+                @Override
+                public void mouseDragged(MouseEvent evt){
+                    mouseMoved(evt);
                 }
             });
             setFocusableWindowState(false);
             setAlwaysOnTop(true);
             DesktopNotify.logDebug("NotifyDriver", "Desktop Notify Frame deployed.");
+            DesktopNotify.logDebug("NotifyDriver", Utils.getPipelineInfo().toString());
+        }
+        
+        /**
+         * Keeps track of the notification under the mouse pointer. A new frame
+         * is requested only when it changes.
+         * @param y The vertical position of the pointer, within the column.
+         */
+        private void pointerMoved(int y) {
+            mouseY = y;
+            mouseInside = true;
+            DesktopNotify hit = hitIndex.find(y);
+            if (hit != hovered) {
+                hovered = hit;
+                requestFrame();
+            }
+        }
+        
+        /**
+         * Dispatches the action of the notification clicked, right away, and
+         * dismisses it if it was waiting for the click.
+         * @param evt The click event.
+         */
+        private void click(MouseEvent evt) {
+            DesktopNotify window = hitIndex.find(evt.getY() + top);
+            if (window == null) return;
+            runAction(window, evt.getWhen());
+            if (window.timeOut == 0) window.hide();
+        }
+        
+        /**
+         * Prepares to measure the time it takes to paint the first
+         * notification once the window is shown.
+         * @param warm <code>true</code> if the window was kept from a previous
+         *             burst of notifications.
+         */
+        void starting(boolean warm) {
+            starting = true;
+            warmStart = warm;
+            firstPost = 0L;
         }
         
         @Override
         public void setVisible(boolean visible) {
             boolean bool = isVisible();
-            if (visible) {
+            if (visible && !bool) {
                 Rectangle screenSize = Utils.getScreenSize();
-                setBounds(screenSize.x+screenSize.width-305, screenSize.y,
-                          300, screenSize.height-5);
-                if (!bool && !nativeTrans)
-                    bg = Utils.getBackgroundCap(getBounds());
+                column.setBounds(screenSize.x+screenSize.width-305, screenSize.y,
+                                 300, screenSize.height-5);
+                if (!nativeTrans) bg = Utils.getBackgroundCap(column);
+                //Nothing is on screen yet, it grows as notifications come
+                setTop(Math.max(0, column.height - RESIZE_STEP));
             }
             super.setVisible(visible);
+            if (visible && activeRendering && strategy == null) {
+                try {
+                    setIgnoreRepaint(true);
+                    createBufferStrategy(2);
+                    strategy = getBufferStrategy();
+                    DesktopNotify.logDebug("NotifyDriver", "Active rendering enabled.");
+                } catch (RuntimeException ex) {
+                    DesktopNotify.logWarning("NotifyDriver", "Unable to create a "
+                            + "buffer strategy, falling back to passive rendering.");
+                    strategy = null;
+                }
+                if (strategy == null) setIgnoreRepaint(false);
+            }
         }
         
         /**
-         * Paints the window contents.
-         * @param rd a graphics2D object received from the original paint event.
+         * Asks for the state of the notifications to be updated for a new
+         * frame. With active rendering, the update runs right away in the
+         * calling thread. Otherwise, it runs later in the event thread.
+         * @return The id of the requested frame.
          */
-        public void render(Graphics2D rd) {
-            Point p = getMousePosition();
-            finished = false;
-            int x = 0, y = getHeight();
+        long requestUpdate() {
+            long frameId = ++requested;
+            if (strategy != null) {
+                update();
+            } else if (!updatePending) {
+                updatePending = true;
+                java.awt.EventQueue.invokeLater(updater);
+            }
+            return frameId;
+        }
+        
+        /**
+         * Tells if the driver thread can sleep, because the frame requested
+         * was updated and there was nothing being animated on it.
+         * @param frameId The id of the last requested frame.
+         * @return <code>true</code> if no more frames are needed for now.
+         */
+        boolean isIdle(long frameId) {
+            return updated >= frameId && !animating;
+        }
+        
+        /**
+         * Adds a notification area to the region to repaint.
+         * @param y The top of the notification.
+         * @param h The height of the notification.
+         */
+        private void markDirty(int y, int h) {
+            if (y == DesktopNotify.OFF_SCREEN) return;
+            dirtyTop = Math.min(dirtyTop, y);
+            dirtyBottom = Math.max(dirtyBottom, y + h);
+        }
+        
+        /**
+         * Updates the state of the notifications for a new frame: placement,
+         * hover and expiration. Only the area covered by notifications
+         * that changed gets repainted afterwards.
+         */
+        void update() {
+            long frameId = requested;
+            hover = hovered;
+            moving = false;
             long l = System.currentTimeMillis();
-            if (windows.isEmpty()) finished = true;
-            int cur = Cursor.DEFAULT_CURSOR;
-            if (!nativeTrans) rd.drawImage(bg, 0, 0, this);
+            for (DesktopNotify window; (window = expiries.pollExpired(l)) != null; ) {
+                retire(window);
+                windows.remove(window);
+                layoutHeight = -1;
+            }
+            if (layoutHeight != column.height) layout(l);
+            //New notifications wait for the stack to settle, or they would
+            //pop up on top of the ones still sliding down
+            boolean sliding = isSliding(l);
+            //Only the head of the backlog is checked, and only if it fits
+            for (DesktopNotify window; (window = pending.peek()) != null; ) {
+                if (!window.laidOut) break;
+                if (!window.isVisible() || window.markedForHide) {
+                    if (pending.remove(window)) {
+                        window.markedForHide = false;
+                        dismiss(window);
+                    }
+                    continue;
+                }
+                if (sliding) break;
+                if (stackTop - window.h <= 0) {
+                    preempt(window, l);
+                    break;
+                }
+                if (!pending.remove(window)) continue; //Just dropped
+                window.popupStart = l;
+                window.posY = DesktopNotify.OFF_SCREEN;
+                window.moveTo(stackTop - window.h, l);
+                windows.add(window);
+                if (starting) {
+                    starting = false;
+                    firstPost = window.postTime;
+                }
+                stackTop -= window.h + 5;
+                indexStale = true;
+            }
+            if (repaintAll) {
+                repaintAll = false;
+                for (int i = 0; i < windows.size(); i++) {
+                    windows.get(i).flushCache();
+                }
+                markDirty(top, column.height - top);
+            }
+            if (exposed) {
+                exposed = false;
+                markDirty(top, column.height - top);
+            }
+            stackMin = column.height;
+            for (int i = 0; i < windows.size(); i++) {
+                place(windows.get(i), l);
+            }
+            fitBounds();
+            if (indexStale) {
+                hitIndex = new HitIndex(windows);
+                indexStale = false;
+                //The stack may have moved under the pointer
+                DesktopNotify hit = mouseInside ? hitIndex.find(mouseY) : null;
+                if (hit != hovered) {
+                    hovered = hit;
+                    requestFrame();
+                }
+            }
+            long wake = expiries.nextWake();
+            finished = windows.isEmpty() && pending.isEmpty();
+            int cursor = hover != null && hover.getAction() != null
+                    ? Cursor.HAND_CURSOR : Cursor.DEFAULT_CURSOR;
+            if (cursor != cursorType) {
+                cursorType = cursor;
+                setCursor(Cursor.getPredefinedCursor(cursor));
+            }
+            if (dirtyTop < dirtyBottom) {
+                if (strategy != null) renderActive();
+                else getContentPane().repaint(0, dirtyTop - top, getWidth(), dirtyBottom - dirtyTop);
+                dirtyTop = Integer.MAX_VALUE;
+                dirtyBottom = Integer.MIN_VALUE;
+            }
+            nextWake = wake;
+            animating = moving;
+            updated = frameId;
+        }
+        
+        /**
+         * Makes the oldest notification on screen with a lower priority than
+         * the one waiting fade out, if the waiting one is allowed to preempt.
+         * Only one is preempted at a time; the next one, if still needed,
+         * once it is gone. Notifications already fading out are left alone,
+         * since they're about to make room anyway.
+         * @param waiting The notification waiting for room.
+         * @param l       The current time.
+         */
+        private void preempt(DesktopNotify waiting, long l) {
+            int priority = waiting.postPriority;
+            if (priority < preemptionPriority) return;
+            if (preempted != null && preempted.isVisible()) return;
+            preempted = null;
             for (int i = 0; i < windows.size(); i++) {
                 DesktopNotify window = windows.get(i);
-                if (window.isVisible()) {
-                    y -= window.h;
-                    if (window.popupStart == 0) {
-                        window.popupStart = System.currentTimeMillis();
+                if (window.postPriority < priority && !window.closing
+                        && window.expTime() - l >= 500) {
+                    window.markedForHide = true;
+                    preempted = window;
+                    stats.preempted();
+                    return;
+                }
+            }
+        }
+        
+        /**
+         * Resizes the window to cover the notifications on screen, rounded to
+         * {@link #RESIZE_STEP}. It grows as soon as needed, but it only shrinks
+         * once nothing is moving, so a burst of changes ends up in a single
+         * resize.
+         */
+        private void fitBounds() {
+            int fit = Math.max(0, stackMin / RESIZE_STEP * RESIZE_STEP);
+            fit = Math.min(fit, Math.max(0, column.height - RESIZE_STEP));
+            if (fit < top || (fit > top && !moving)) setTop(fit);
+        }
+        
+        /**
+         * Moves the top edge of the window within the column, and repaints it
+         * all.
+         * @param fit The new top, relative to the column.
+         */
+        private void setTop(int fit) {
+            top = fit;
+            setBounds(column.x, column.y + fit, column.width, column.height - fit);
+            markDirty(fit, column.height - fit);
+        }
+        
+        /**
+         * Assigns a slot to every notification on screen, from the bottom up.
+         * Those that get a new one slide there from where they are.
+         * @param l The current time, in milliseconds.
+         */
+        private void layout(long l) {
+            int y = column.height;
+            for (int i = 0; i < windows.size(); i++) {
+                DesktopNotify window = windows.get(i);
+                y -= window.h;
+                window.moveTo(y, l);
+                y -= 5;
+            }
+            stackTop = y;
+            layoutHeight = column.height;
+            indexStale = true;
+        }
+        
+        /**
+         * @param l The current time.
+         * @return <code>true</code> if a notification on screen is still
+         *         sliding to the slot given by the last layout.
+         */
+        private boolean isSliding(long l) {
+            for (int i = 0; i < windows.size(); i++) {
+                if (l - windows.get(i).reflowStart < DesktopNotify.REFLOW_TIME) return true;
+            }
+            return false;
+        }
+        
+        /**
+         * Takes a notification off the screen and hides it.
+         * @param window The notification.
+         */
+        private void retire(DesktopNotify window) {
+            window.markedForHide = false;
+            markDirty(window.posY, window.h);
+            window.posY = DesktopNotify.OFF_SCREEN;
+            window.slotY = DesktopNotify.OFF_SCREEN;
+            dismiss(window);
+            indexStale = true;
+        }
+        
+        /**
+         * Updates a notification that is on screen and moves it towards the
+         * slot it was given by the layout.
+         * @param window The notification.
+         * @param l      The current time, in milliseconds.
+         */
+        private void place(DesktopNotify window, long l) {
+            int n = window.occurrences;
+            if (n != window.shownOccurrences) {
+                //Duplicates arrived, show the count and start over
+                window.shownOccurrences = n;
+                window.flushCache();
+                if (window.baseTimeOut != 0)
+                    window.timeOut = l - window.popupStart + window.baseTimeOut;
+                markDirty(window.posY, window.h);
+            }
+            int y = window.layoutY(l);
+            if (window.update(window == hover, l) || window.posY != y) {
+                markDirty(window.posY, window.h);
+                markDirty(y, window.h);
+            }
+            if (window.posY != y) indexStale = true;
+            window.posY = y;
+            stackMin = Math.min(stackMin, y);
+            if (window.markedForHide) {
+                window.closing = true;
+                window.timeOut = l - window.popupStart + 500;
+                window.markedForHide = false;
+            }
+            moving |= window.isAnimating(l);
+            expiries.schedule(window);
+        }
+        
+        /**
+         * Paints the whole window through the buffer strategy. Used only with
+         * active rendering.
+         */
+        private void renderActive() {
+            do {
+                do {
+                    Graphics2D rd = (Graphics2D)strategy.getDrawGraphics();
+                    try {
+                        rd.setColor(getBackground());
+                        rd.fillRect(0, 0, getWidth(), getHeight());
+                        render(rd);
+                    } finally {
+                        rd.dispose();
                     }
-                    if (y > 0) {
-                        boolean hover = false;
-                        if (p != null) {
-                            if (p.y > y && p.y < y + window.h) {
-                                hover = true;
-                                if (window.getAction() != null) {
-                                    cur = Cursor.HAND_CURSOR;
-                                }
-                                if (clicked) {
-                                    if (window.getAction() != null) {
-                                        final DesktopNotify w = window;
-                                        final long lf = l;
-                                        java.awt.EventQueue.invokeLater(new Runnable(){@Override public void run(){
-                                            w.getAction().actionPerformed(new ActionEvent(w, ActionEvent.ACTION_PERFORMED, "fireAction", lf, 0));
-                                        }});
-                                    }
-                                    if (window.expTime() == Long.MAX_VALUE) {
-                                        window.timeOut = l - window.popupStart + 500;
-                                    }
-                                }
-                            }
-                        }
-                        window.render(x, y, hover, rd, l);
-                        if (window.markedForHide) {
-                            window.timeOut = l - window.popupStart + 500;
-                            window.markedForHide = false;
-                        }
+                } while (strategy.contentsRestored());
+                strategy.show();
+            } while (strategy.contentsLost());
+        }
+        
+        /**
+         * Paints the window contents. Only notifications that overlap the
+         * area being repainted are drawn.
+         * @param rd a graphics2D object received from the original paint event.
+         */
+        public void render(Graphics2D rd) {
+            long start = System.nanoTime();
+            int top = this.top;
+            if (!nativeTrans) rd.drawImage(bg, 0, -top, this);
+            clip.setBounds(0, 0, getWidth(), getHeight()); //Kept if unclipped
+            rd.getClipBounds(clip);
+            for (int i = 0; i < windows.size(); i++) {
+                DesktopNotify window = windows.get(i);
+                if (window.posY == DesktopNotify.OFF_SCREEN) continue;
+                int y = window.posY - top;
+                if (y < clip.y + clip.height && y + window.h > clip.y) {
+                    window.paint(0, y, rd);
+                }
+            }
+            long end = System.nanoTime();
+            stats.frameRendered(end - start, end);
+            if (adaptiveQuality && governor.frameRendered(end - start, framePeriod)) {
+                qualityChanged();
+            }
+            if (firstPost != 0L) {
+                stats.firstFrame(warmStart, end - firstPost);
+                firstPost = 0L;
+            }
+        }
+        
+        /**
+         * The vertical intervals taken by the notifications on screen, as they
+         * were drawn, sorted from the top down, so the one at a given height
+         * is found with a binary search. It never changes once built, so it
+         * can be read from the event thread while the driver builds a new one.
+         */
+        private static final class HitIndex {
+            static final HitIndex EMPTY = new HitIndex(new ArrayList<DesktopNotify>(0));
+            private final DesktopNotify[] windows;
+            private final int[] tops;
+            
+            /**
+             * @param stack The notifications on screen, from the bottom up.
+             */
+            HitIndex(ArrayList<DesktopNotify> stack) {
+                int n = stack.size();
+                windows = new DesktopNotify[n];
+                tops = new int[n];
+                for (int i = 0; i < n; i++) {
+                    DesktopNotify window = stack.get(n - 1 - i);
+                    windows[i] = window;
+                    tops[i] = window.posY;
+                }
+            }
+            
+            /**
+             * @param y A vertical position in the window.
+             * @return The notification at that height, or <code>null</code>.
+             */
+            DesktopNotify find(int y) {
+                int lo = 0, hi = tops.length - 1, found = -1;
+                while (lo <= hi) {
+                    int mid = (lo + hi) >>> 1;
+                    if (tops[mid] < y) {
+                        found = mid;
+                        lo = mid + 1;
                     } else {
-                        window.popupStart = l;
-                    }
-                    if (l > window.expTime() || (y <= 0 && window.markedForHide)) {
-                        window.markedForHide = false;
-                        window.setVisible(false);
-                        windows.remove(window);
-                        i--;
+                        hi = mid - 1;
                     }
-                    y -= 5;
                 }
+                if (found == -1) return null;
+                DesktopNotify window = windows[found];
+                return y < tops[found] + window.h ? window : null;
             }
-            clicked = false;
-            setCursor(new Cursor(cur));
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,472 @@
+/*
+ * DS Desktop Notify
+ * A small utility to show small notifications in your Desktop anytime!
+ */
+package ds.desktop.notify;
+
+/**
+ * A snapshot of the statistics gathered by the {@link DesktopNotifyDriver}
+ * while painting notifications. Use {@link DesktopNotifyDriver#getStats()} to
+ * get a fresh one; the values in this object won't change afterwards.
+ * @author DragShot
+ * @since 0.9
+ */
+public final class DriverStats {
+    private int frameRate;
+    private int qualityTier;
+    private long frames;
+    private long missedDeadlines;
+    private long lastRenderTime;
+    private long maxRenderTime;
+    private long totalRenderTime;
+    private double effectiveFps;
+    private long actions;
+    private long lastActionLatency;
+    private long maxActionLatency;
+    private long totalActionLatency;
+    private long lastActionTime;
+    private long maxActionTime;
+    private long totalActionTime;
+    private long coldStarts;
+    private long lastColdStartTime;
+    private long totalColdStartTime;
+    private long warmStarts;
+    private long lastWarmStartTime;
+    private long totalWarmStartTime;
+    private long coalesced;
+    private long limited;
+    private long digests;
+    private long digested;
+    private long preemptions;
+    private long rejected;
+    private long dropped;
+
+    /** Start of the current one-second window used to measure the FPS. */
+    private long fpsWindowStart;
+    /** Frames painted in the current one-second window. */
+    private int fpsWindowFrames;
+
+    DriverStats() {}
+
+    /**
+     * Copy constructor, used to create snapshots.
+     * @param stats The stats to copy.
+     */
+    private DriverStats(DriverStats stats) {
+        frameRate = stats.frameRate;
+        qualityTier = stats.qualityTier;
+        frames = stats.frames;
+        missedDeadlines = stats.missedDeadlines;
+        lastRenderTime = stats.lastRenderTime;
+        maxRenderTime = stats.maxRenderTime;
+        totalRenderTime = stats.totalRenderTime;
+        effectiveFps = stats.effectiveFps;
+        actions = stats.actions;
+        lastActionLatency = stats.lastActionLatency;
+        maxActionLatency = stats.maxActionLatency;
+        totalActionLatency = stats.totalActionLatency;
+        lastActionTime = stats.lastActionTime;
+        maxActionTime = stats.maxActionTime;
+        totalActionTime = stats.totalActionTime;
+        coldStarts = stats.coldStarts;
+        lastColdStartTime = stats.lastColdStartTime;
+        totalColdStartTime = stats.totalColdStartTime;
+        warmStarts = stats.warmStarts;
+        lastWarmStartTime = stats.lastWarmStartTime;
+        totalWarmStartTime = stats.totalWarmStartTime;
+        coalesced = stats.coalesced;
+        limited = stats.limited;
+        digests = stats.digests;
+        digested = stats.digested;
+        preemptions = stats.preemptions;
+        rejected = stats.rejected;
+        dropped = stats.dropped;
+    }
+
+    /**
+     * @return A copy of the current values.
+     */
+    synchronized DriverStats snapshot() {
+        return new DriverStats(this);
+    }
+
+    synchronized void setFrameRate(int frameRate) {
+        this.frameRate = frameRate;
+    }
+
+    synchronized void setQualityTier(int qualityTier) {
+        this.qualityTier = qualityTier;
+    }
+
+    /**
+     * Records a painted frame.
+     * @param renderTime The time it took to paint it, in nanoseconds.
+     * @param now        The current time, as given by {@link System#nanoTime()}.
+     */
+    synchronized void frameRendered(long renderTime, long now) {
+        frames++;
+        lastRenderTime = renderTime;
+        totalRenderTime += renderTime;
+        if (renderTime > maxRenderTime) maxRenderTime = renderTime;
+        if (fpsWindowStart == 0) {
+            fpsWindowStart = now;
+            fpsWindowFrames = 0;
+            return;
+        }
+        fpsWindowFrames++;
+        long elapsed = now - fpsWindowStart;
+        if (elapsed >= 1000000000L) {
+            effectiveFps = fpsWindowFrames * 1e9 / elapsed;
+            fpsWindowStart = now;
+            fpsWindowFrames = 0;
+        }
+    }
+
+    /**
+     * Records that the driver went idle, so the time spent without painting
+     * doesn't count towards the effective FPS.
+     */
+    synchronized void idle() {
+        fpsWindowStart = 0;
+    }
+
+    /**
+     * Records a frame that wasn't painted before the next one was due.
+     */
+    synchronized void deadlineMissed() {
+        missedDeadlines++;
+    }
+
+    /**
+     * Records the action of a clicked notification that was run.
+     * @param latency The time it waited for its executor, in nanoseconds.
+     * @param time    The time it took to run, in nanoseconds.
+     */
+    synchronized void actionRun(long latency, long time) {
+        actions++;
+        lastActionLatency = latency;
+        totalActionLatency += latency;
+        if (latency > maxActionLatency) maxActionLatency = latency;
+        lastActionTime = time;
+        totalActionTime += time;
+        if (time > maxActionTime) maxActionTime = time;
+    }
+
+    /**
+     * Records the time to the first frame of a burst of notifications.
+     * @param warm <code>true</code> if the driver was idle but still around,
+     *             <code>false</code> if it had to be started.
+     * @param time The time between the post of the first notification and
+     *             the frame that showed it, in nanoseconds.
+     */
+    synchronized void firstFrame(boolean warm, long time) {
+        if (warm) {
+            warmStarts++;
+            lastWarmStartTime = time;
+            totalWarmStartTime += time;
+        } else {
+            coldStarts++;
+            lastColdStartTime = time;
+            totalColdStartTime += time;
+        }
+    }
+
+    /**
+     * Records a post that was counted on a duplicate instead of being shown.
+     */
+    synchronized void coalesced() {
+        coalesced++;
+    }
+
+    /**
+     * Records a post held back by the rate limit of its source.
+     */
+    synchronized void limited() {
+        limited++;
+    }
+
+    /**
+     * Records a digest posted for the posts held back from a source.
+     * @param count The amount of posts it sums up.
+     */
+    synchronized void digestPosted(int count) {
+        digests++;
+        digested += count;
+    }
+
+    /**
+     * Records a notification made to fade out early to make room for one
+     * with a higher priority.
+     */
+    synchronized void preempted() {
+        preemptions++;
+    }
+
+    /**
+     * Records a post rejected because the queue was full.
+     */
+    synchronized void rejected() {
+        rejected++;
+    }
+
+    /**
+     * Records a notification dropped because the queue was full.
+     */
+    synchronized void dropped() {
+        dropped++;
+    }
+
+    /**
+     * @return The frame rate the driver is currently aiming for, in frames per
+     *         second.
+     */
+    public int getFrameRate() {
+        return frameRate;
+    }
+
+    /**
+     * @return The quality tier in use when this snapshot was taken.
+     * @see DesktopNotifyDriver#getQualityTier()
+     */
+    public int getQualityTier() {
+        return qualityTier;
+    }
+
+    /**
+     * @return The amount of frames painted so far.
+     */
+    public long getFrameCount() {
+        return frames;
+    }
+
+    /**
+     * @return The amount of frames that weren't painted in time for the next
+     *         frame deadline.
+     */
+    public long getMissedDeadlines() {
+        return missedDeadlines;
+    }
+
+    /**
+     * @return The time it took to paint the last frame, in nanoseconds.
+     */
+    public long getLastRenderTime() {
+        return lastRenderTime;
+    }
+
+    /**
+     * @return The longest time it took to paint a frame, in nanoseconds.
+     */
+    public long getMaxRenderTime() {
+        return maxRenderTime;
+    }
+
+    /**
+     * @return The average time it takes to paint a frame, in nanoseconds.
+     */
+    public long getAverageRenderTime() {
+        return frames == 0 ? 0 : totalRenderTime / frames;
+    }
+
+    /**
+     * @return The amount of frames actually painted during the last second
+     *         of animation. Idle periods are not taken into account.
+     */
+    public double getEffectiveFps() {
+        return effectiveFps;
+    }
+
+    /**
+     * @return The amount of notification actions run so far.
+     */
+    public long getActionCount() {
+        return actions;
+    }
+
+    /**
+     * @return The time the last action waited between being dispatched on
+     *         click and the moment its executor started running it, in
+     *         nanoseconds.
+     */
+    public long getLastActionLatency() {
+        return lastActionLatency;
+    }
+
+    /**
+     * @return The longest time an action waited for its executor, in
+     *         nanoseconds.
+     */
+    public long getMaxActionLatency() {
+        return maxActionLatency;
+    }
+
+    /**
+     * @return The average time actions wait for their executor, in
+     *         nanoseconds.
+     */
+    public long getAverageActionLatency() {
+        return actions == 0 ? 0 : totalActionLatency / actions;
+    }
+
+    /**
+     * @return The time it took to run the last action, in nanoseconds.
+     */
+    public long getLastActionTime() {
+        return lastActionTime;
+    }
+
+    /**
+     * @return The longest time it took to run an action, in nanoseconds.
+     */
+    public long getMaxActionTime() {
+        return maxActionTime;
+    }
+
+    /**
+     * @return The average time it takes to run an action, in nanoseconds.
+     */
+    public long getAverageActionTime() {
+        return actions == 0 ? 0 : totalActionTime / actions;
+    }
+
+    /**
+     * @return The amount of times the driver had to start a thread and deploy
+     *         its window to show notifications.
+     */
+    public long getColdStartCount() {
+        return coldStarts;
+    }
+
+    /**
+     * @return The time to the first frame the last time the driver had to be
+     *         started, measured from the post of the notification, in
+     *         nanoseconds.
+     */
+    public long getLastColdStartTime() {
+        return lastColdStartTime;
+    }
+
+    /**
+     * @return The average time to the first frame when the driver had to be
+     *         started, in nanoseconds.
+     */
+    public long getAverageColdStartTime() {
+        return coldStarts == 0 ? 0 : totalColdStartTime / coldStarts;
+    }
+
+    /**
+     * @return The amount of times notifications arrived during the idle grace
+     *         period, when the driver was kept around.
+     * @see DesktopNotifyDriver#setIdleGracePeriod(long)
+     */
+    public long getWarmStartCount() {
+        return warmStarts;
+    }
+
+    /**
+     * @return The time to the first frame the last time a notification
+     *         arrived during the idle grace period, measured from its post,
+     *         in nanoseconds.
+     */
+    public long getLastWarmStartTime() {
+        return lastWarmStartTime;
+    }
+
+    /**
+     * @return The average time to the first frame for notifications that
+     *         arrived during the idle grace period, in nanoseconds.
+     */
+    public long getAverageWarmStartTime() {
+        return warmStarts == 0 ? 0 : totalWarmStartTime / warmStarts;
+    }
+
+    /**
+     * @return The amount of posts counted on a queued or visible duplicate
+     *         instead of being shown.
+     * @see DesktopNotifyDriver#setCoalescing(boolean)
+     */
+    public long getCoalescedCount() {
+        return coalesced;
+    }
+
+    /**
+     * @return The amount of posts held back by the rate limit of their
+     *         source.
+     * @see DesktopNotifyDriver#setRateLimit(double, int)
+     */
+    public long getLimitedCount() {
+        return limited;
+    }
+
+    /**
+     * @return The amount of digest notifications posted for rate limited
+     *         sources.
+     */
+    public long getDigestCount() {
+        return digests;
+    }
+
+    /**
+     * @return The amount of posts summed up in digests so far. Posts held
+     *         back and waiting for their digest aren't counted yet.
+     */
+    public long getDigestedCount() {
+        return digested;
+    }
+
+    /**
+     * @return The amount of notifications made to fade out early to make room
+     *         for others with a higher priority.
+     * @see DesktopNotifyDriver#setPreemptionPriority(int)
+     */
+    public long getPreemptionCount() {
+        return preemptions;
+    }
+
+    /**
+     * @return The amount of posts rejected because the queue was full, with
+     *         {@link DesktopNotifyDriver#OVERFLOW_REJECT} or once the time to
+     *         wait with {@link DesktopNotifyDriver#OVERFLOW_BLOCK} ran out.
+     * @see DesktopNotifyDriver#setQueueCapacity(int, int, long)
+     */
+    public long getRejectedCount() {
+        return rejected;
+    }
+
+    /**
+     * @return The amount of notifications dropped because the queue was full,
+     *         with {@link DesktopNotifyDriver#OVERFLOW_DROP_OLDEST} or
+     *         {@link DesktopNotifyDriver#OVERFLOW_DROP_LOWEST}.
+     * @see DesktopNotifyDriver#setQueueCapacity(int, int, long)
+     */
+    public long getDroppedCount() {
+        return dropped;
+    }
+
+    @Override
+    public String toString() {
+        return "DriverStats[frameRate=" + frameRate
+                + ", qualityTier=" + qualityTier + ", frames=" + frames
+                + ", missedDeadlines=" + missedDeadlines
+                + ", lastRenderTime=" + lastRenderTime
+                + ", avgRenderTime=" + getAverageRenderTime()
+                + ", maxRenderTime=" + maxRenderTime
+                + ", effectiveFps=" + effectiveFps
+                + ", actions=" + actions
+                + ", avgActionLatency=" + getAverageActionLatency()
+                + ", maxActionLatency=" + maxActionLatency
+                + ", avgActionTime=" + getAverageActionTime()
+                + ", maxActionTime=" + maxActionTime
+                + ", coldStarts=" + coldStarts
+                + ", avgColdStartTime=" + getAverageColdStartTime()
+                + ", warmStarts=" + warmStarts
+                + ", avgWarmStartTime=" + getAverageWarmStartTime()
+                + ", coalesced=" + coalesced
+                + ", limited=" + limited
+                + ", digests=" + digests
+                + ", digested=" + digested
+                + ", preemptions=" + preemptions
+                + ", rejected=" + rejected
+                + ", dropped=" + dropped + "]";
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * DS Desktop Notify
+ * A small utility to show small notifications in your Desktop anytime!
+ */
+package ds.desktop.notify;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * The notifications on screen that will expire, the first one to expire at
+ * the head. Only the ones that did expire are looked at on each frame, and the
+ * driver sleeps until the next one starts to fade out.
+ * <p>
+ * Not thread-safe: it's used by the frame updates only.
+ * @author DragShot
+ * @since 0.9
+ */
+class ExpiryQueue {
+    private final PriorityQueue<DesktopNotify> queue =
+            new PriorityQueue<DesktopNotify>(16, new Comparator<DesktopNotify>() {
+        @Override
+        public int compare(DesktopNotify a, DesktopNotify b) {
+            return a.expiry < b.expiry ? -1 : (a.expiry == b.expiry ? 0 : 1);
+        }
+    });
+
+    /**
+     * Puts a notification in the queue, or moves it there if its timeout
+     * changed. Notifications that never expire are kept out.
+     * @param window The notification.
+     */
+    void schedule(DesktopNotify window) {
+        if (window.expiry == window.expTime()) return;
+        if (window.expiry != Long.MAX_VALUE) queue.remove(window);
+        window.expiry = window.expTime();
+        if (window.expiry != Long.MAX_VALUE) queue.add(window);
+    }
+
+    /**
+     * Takes the next notification that did expire out of the queue.
+     * @param l The current time.
+     * @return The notification, or <code>null</code> if none did expire yet.
+     */
+    DesktopNotify pollExpired(long l) {
+        DesktopNotify window = queue.peek();
+        if (window == null || l <= window.expiry) return null;
+        queue.poll();
+        window.expiry = Long.MAX_VALUE;
+        return window;
+    }
+
+    /**
+     * @return The time the next notification starts to fade out, so a frame
+     *         must be painted, or <code>Long.MAX_VALUE</code> if none will.
+     */
+    long nextWake() {
+        DesktopNotify next = queue.peek();
+        return next == null ? Long.MAX_VALUE : next.expiry - 500;
+    }
+}
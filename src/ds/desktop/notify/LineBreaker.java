@@ -0,0 +1,176 @@
+/*
+ * DS Desktop Notify
+ * A small utility to show small notifications in your Desktop anytime!
+ */
+package ds.desktop.notify;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.text.BreakIterator;
+import java.text.StringCharacterIterator;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Splits text into lines that fit inside a notification. Break points are
+ * taken from a locale-aware <code>BreakIterator</code>, so text without spaces
+ * (like Chinese or Japanese) is wrapped too, and every character is measured
+ * only once. The results are kept in a bounded cache, since the same messages
+ * tend to be posted over and over.
+ * @author DragShot
+ * @since 0.9
+ */
+final class LineBreaker {
+    /** The maximum amount of layouts to keep in the cache. */
+    private static final int CACHE_SIZE = 256;
+    /** The most recently used layouts. */
+    private static final Map<Key, String[]> cache =
+            new LinkedHashMap<Key, String[]>(CACHE_SIZE, 0.75F, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, String[]> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    private LineBreaker() {}
+
+    /**
+     * Splits a text into lines that fit in a given width. The returned array
+     * may be shared with other notifications, so it must not be modified.
+     * @param text  The text to split. Line feeds always start a new line.
+     * @param font  The font the text will be painted with.
+     * @param width The room available for each line, in pixels. It already
+     *              accounts for the icon, if there's any.
+     * @return The lines of text.
+     */
+    static String[] split(String text, Font font, int width) {
+        Key key = new Key(text, font, width);
+        String[] lines;
+        synchronized (cache) {
+            lines = cache.get(key);
+        }
+        if (lines == null) {
+            lines = breakLines(text, DesktopNotifyDriver.getFontMetrics(font), width);
+            synchronized (cache) {
+                cache.put(key, lines);
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Does the actual splitting, without looking at the cache.
+     * @param text  The text to split.
+     * @param ftm   The metrics of the font in use.
+     * @param width The room available for each line, in pixels.
+     * @return The lines of text.
+     */
+    static String[] breakLines(String text, FontMetrics ftm, int width) {
+        ArrayList<String> list = new ArrayList<String>();
+        char[] chars = text.toCharArray();
+        BreakIterator breaker = BreakIterator.getLineInstance();
+        int start = 0;
+        while (start < chars.length || list.isEmpty()) {
+            int end = text.indexOf('\n', start);
+            if (end == -1) end = chars.length;
+            breakParagraph(text, chars, start, end, ftm, width, breaker, list);
+            start = end + 1;
+        }
+        return list.toArray(new String[list.size()]);
+    }
+
+    /**
+     * Splits a single paragraph, adding its lines to the given list. Empty
+     * paragraphs add an empty line.
+     */
+    private static void breakParagraph(String text, char[] chars, int start,
+            int end, FontMetrics ftm, int width, BreakIterator breaker,
+            ArrayList<String> list) {
+        breaker.setText(new StringCharacterIterator(text, start, end, start));
+        int lineStart = start, lineWidth = 0;
+        int from = start;
+        for (int to = breaker.next(); to != BreakIterator.DONE;
+                to = breaker.next()) {
+            //The trailing whitespace of a segment may hang past the margin
+            int visEnd = trimEnd(chars, from, to);
+            int visWidth = ftm.charsWidth(chars, from, visEnd - from);
+            int spaceWidth = ftm.charsWidth(chars, visEnd, to - visEnd);
+            if (from > lineStart && lineWidth + visWidth >= width) {
+                list.add(new String(chars, lineStart, trimEnd(chars, lineStart, from) - lineStart));
+                lineStart = from;
+                lineWidth = 0;
+            }
+            if (lineWidth == 0 && visWidth >= width) {
+                //Too long for a line on its own, break it anywhere
+                lineStart = breakLongSegment(chars, from, visEnd, ftm, width, list);
+                lineWidth = ftm.charsWidth(chars, lineStart, visEnd - lineStart);
+            } else {
+                lineWidth += visWidth;
+            }
+            lineWidth += spaceWidth;
+            from = to;
+        }
+        list.add(new String(chars, lineStart, trimEnd(chars, lineStart, end) - lineStart));
+    }
+
+    /**
+     * Splits a segment with no break opportunities that doesn't fit in a
+     * line, adding all but its last piece to the given list.
+     * @return The start of the last piece, which remains to be placed.
+     */
+    private static int breakLongSegment(char[] chars, int from, int to,
+            FontMetrics ftm, int width, ArrayList<String> list) {
+        int lineStart = from, lineWidth = 0;
+        for (int i = from; i < to; i++) {
+            int len = Character.isHighSurrogate(chars[i]) && i + 1 < to ? 2 : 1;
+            int charWidth = ftm.charsWidth(chars, i, len);
+            if (i > lineStart && lineWidth + charWidth >= width) {
+                list.add(new String(chars, lineStart, i - lineStart));
+                lineStart = i;
+                lineWidth = 0;
+            }
+            lineWidth += charWidth;
+            i += len - 1;
+        }
+        return lineStart;
+    }
+
+    /**
+     * @return The end of the given range once trailing whitespace is left out.
+     */
+    private static int trimEnd(char[] chars, int from, int to) {
+        while (to > from && Character.isWhitespace(chars[to - 1])) to--;
+        return to;
+    }
+
+    /**
+     * The key to look layouts up in the cache.
+     */
+    private static final class Key {
+        private final String text;
+        private final Font font;
+        private final int width;
+        private final int hash;
+
+        Key(String text, Font font, int width) {
+            this.text = text;
+            this.font = font;
+            this.width = width;
+            this.hash = (text.hashCode() * 31 + font.hashCode()) * 31 + width;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) return false;
+            Key key = (Key)obj;
+            return width == key.width && text.equals(key.text)
+                    && font.equals(key.font);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
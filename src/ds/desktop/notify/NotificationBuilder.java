@@ -6,6 +6,10 @@ package ds.desktop.notify;
 
 import java.awt.Image;
 import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * Utilitary object that allows easy and flexible build of notifications that
@@ -49,6 +53,11 @@ public class NotificationBuilder {
     private int orientation;
     private long timeOut;
     private ActionListener action;
+    private Executor actionExecutor;
+    private Object coalesceKey;
+    private String source;
+    private int priority;
+    private final ArrayList<DesktopNotify> batch = new ArrayList<DesktopNotify>();
     private NotifyTheme theme;
 
     /**
@@ -58,6 +67,7 @@ public class NotificationBuilder {
         type = DesktopNotify.DEFAULT;
         orientation = DesktopNotify.defTextOrientation;
         timeOut = 0L;
+        priority = -1;
     }
 
     /**
@@ -135,6 +145,57 @@ public class NotificationBuilder {
         return this;
     }
 
+    /**
+     * Sets the executor that will run the action of the notification to
+     * build. By default, the one set in the driver is used.
+     * @param executor The executor, or <code>null</code> to use the one set
+     *                 in the driver.
+     * @return This builder, just to chain calls.
+     * @see ActionExecutors
+     */
+    public NotificationBuilder setActionExecutor(Executor executor) {
+        this.actionExecutor = executor;
+        return this;
+    }
+
+    /**
+     * Sets the key that tells duplicates of the notification to build apart,
+     * when the driver coalesces them. By default, the title, message and type
+     * are used.
+     * @param key The key, or <code>null</code> to use the contents.
+     * @return This builder, just to chain calls.
+     * @see DesktopNotifyDriver#setCoalescing(boolean)
+     */
+    public NotificationBuilder setCoalesceKey(Object key) {
+        this.coalesceKey = key;
+        return this;
+    }
+
+    /**
+     * Sets the source the notification to build comes from. Notifications
+     * from the same source share the same rate limit.
+     * @param source The source, or <code>null</code> to never limit it.
+     * @return This builder, just to chain calls.
+     * @see DesktopNotifyDriver#setRateLimit(double, int)
+     */
+    public NotificationBuilder setSource(String source) {
+        this.source = source;
+        return this;
+    }
+
+    /**
+     * Sets the priority of the notification to build. By default, it depends
+     * on the type.
+     * @param priority The priority, like {@link DesktopNotify#PRIORITY_HIGH},
+     *                 or -1 to use the one given by the type.
+     * @return This builder, just to chain calls.
+     * @see DesktopNotify#setPriority(int)
+     */
+    public NotificationBuilder setPriority(int priority) {
+        this.priority = priority;
+        return this;
+    }
+
     /**
      * Sets the theme to use in the notification to build.
      * @param theme The theme to use in the notification.
@@ -161,13 +222,17 @@ public class NotificationBuilder {
         DesktopNotify pane = new DesktopNotify(title, message, type, orientation, icon);
         pane.setTimeout(timeOut);
         pane.setAction(action);
+        pane.setActionExecutor(actionExecutor);
+        pane.setCoalesceKey(coalesceKey);
+        pane.setSource(source);
+        pane.setPriority(priority);
         pane.setTheme(theme);
         return pane;
     }
 
     /**
      * Clears all saved data and sets this builder in blank, so you can start
-     * from scratch again.
+     * from scratch again. The notifications added to the batch are kept.
      */
     public void reset() {
         title = null;
@@ -176,9 +241,37 @@ public class NotificationBuilder {
         type = DesktopNotify.DEFAULT;
         timeOut = 0L;
         action = null;
+        actionExecutor = null;
+        coalesceKey = null;
+        source = null;
+        priority = -1;
         theme = null;
     }
 
+    /**
+     * Builds a new <code>DesktopNotify</code> object and adds it to the batch
+     * kept by this builder, to be shown along with the others by
+     * {@link #showBatch()}. You may continue from the current state or call
+     * {@link #reset()} to build the next one; the batch is kept either way.
+     * @return This builder, just to chain calls.
+     */
+    public NotificationBuilder addToBatch() {
+        batch.add(build());
+        return this;
+    }
+
+    /**
+     * Shows all the notifications added to the batch at once, through
+     * {@link DesktopNotify#showAll(Collection)}, and starts a new batch.
+     * @return The notifications shown.
+     */
+    public List<DesktopNotify> showBatch() {
+        List<DesktopNotify> shown = new ArrayList<DesktopNotify>(batch);
+        batch.clear();
+        DesktopNotify.showAll(shown);
+        return shown;
+    }
+
     /**
      * Builds a new <code>DesktopNotify</code> object, and then resets this
      * builder for you to begin bilding the next one from scratch. Once you've
@@ -0,0 +1,196 @@
+/*
+ * DS Desktop Notify
+ * A small utility to show small notifications in your Desktop anytime!
+ */
+package ds.desktop.notify;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * The notifications posted that aren't on screen yet, the highest priority
+ * first and then in the order they were posted. It can be given a capacity,
+ * and a policy to follow when a post doesn't fit: reject it, drop the oldest
+ * notification queued, drop the one with the lowest priority, or wait for
+ * room. Any thread can post; only the thread running the frame updates takes
+ * notifications out.
+ * @author DragShot
+ * @since 0.9
+ * @see DesktopNotifyDriver#setQueueCapacity(int, int, long)
+ */
+final class PendingQueue {
+    /** The queued notifications, in the order they should be shown. */
+    private final TreeSet<DesktopNotify> byPriority = new TreeSet<DesktopNotify>(
+            new Comparator<DesktopNotify>() {
+        @Override
+        public int compare(DesktopNotify a, DesktopNotify b) {
+            int pa = a.postPriority, pb = b.postPriority;
+            if (pa != pb) return pa > pb ? -1 : 1;
+            return a.postSeq < b.postSeq ? -1 : (a.postSeq == b.postSeq ? 0 : 1);
+        }
+    });
+    /** The queued notifications, in the order they were posted. */
+    private final LinkedHashSet<DesktopNotify> byAge = new LinkedHashSet<DesktopNotify>();
+    /** Counts the notifications posted, to keep them in order. */
+    private long seq = 0L;
+    private int capacity = Integer.MAX_VALUE;
+    private int policy = DesktopNotifyDriver.OVERFLOW_REJECT;
+    private long blockTimeout = 0L;
+
+    /**
+     * Sets the amount of notifications that can be queued and what to do
+     * with the ones that don't fit.
+     */
+    synchronized void setCapacity(int capacity, int policy, long blockTimeout) {
+        this.capacity = capacity;
+        this.policy = policy;
+        this.blockTimeout = blockTimeout;
+        notifyAll();
+    }
+
+    synchronized int getCapacity() {
+        return capacity;
+    }
+
+    synchronized int getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Adds a notification to the queue, following the overflow policy if it
+     * is full. The notification left out, if any, is counted in the stats and
+     * must be hidden by the caller.
+     * @param window The notification being posted.
+     * @return The notification left out: <code>null</code> if everything
+     *         fits, the one posted if it was rejected or had the lowest
+     *         priority, or one that was queued and got dropped.
+     */
+    synchronized DesktopNotify offer(DesktopNotify window) {
+        return add(window, true);
+    }
+
+    /**
+     * Adds many notifications to the queue at once, so the frame updates
+     * never see only a part of them. The overflow policy is applied to the
+     * batch as a whole: with {@link DesktopNotifyDriver#OVERFLOW_BLOCK}, it
+     * waits for room for the entire batch before queueing any of it, and the
+     * notifications that still don't fit once the time runs out are
+     * rejected.
+     * @param batch The notifications being posted.
+     * @return The notifications left out, as given by
+     *         {@link #offer(DesktopNotify)}.
+     */
+    synchronized List<DesktopNotify> offerAll(List<DesktopNotify> batch) {
+        if (policy == DesktopNotifyDriver.OVERFLOW_BLOCK) {
+            int fresh = 0;
+            for (int i = 0; i < batch.size(); i++) {
+                if (!byAge.contains(batch.get(i))) fresh++;
+            }
+            awaitRoom(Math.min(fresh, capacity));
+        }
+        ArrayList<DesktopNotify> out = new ArrayList<DesktopNotify>(0);
+        for (int i = 0; i < batch.size(); i++) {
+            DesktopNotify left = add(batch.get(i), false);
+            if (left != null) out.add(left);
+        }
+        return out;
+    }
+
+    /**
+     * Does the actual adding, for {@link #offer(DesktopNotify)} and
+     * {@link #offerAll(List)}.
+     * @param window The notification being posted.
+     * @param block  <code>false</code> to reject it right away, instead of
+     *               waiting for room, if the policy is to block.
+     * @return The notification left out, if any.
+     */
+    private DesktopNotify add(DesktopNotify window, boolean block) {
+        if (byAge.contains(window)) return null; //Posted twice
+        DesktopNotify out = null;
+        if (byAge.size() >= capacity) {
+            switch (policy) {
+                case DesktopNotifyDriver.OVERFLOW_DROP_OLDEST:
+                    out = byAge.iterator().next();
+                    break;
+                case DesktopNotifyDriver.OVERFLOW_DROP_LOWEST:
+                    out = byPriority.last();
+                    if (window.getPriority() <= out.postPriority) {
+                        DesktopNotifyDriver.stats.dropped();
+                        return window;
+                    }
+                    break;
+                case DesktopNotifyDriver.OVERFLOW_BLOCK:
+                    if (!block || !awaitRoom(1)) {
+                        DesktopNotifyDriver.stats.rejected();
+                        return window;
+                    }
+                    break;
+                default:
+                    DesktopNotifyDriver.stats.rejected();
+                    return window;
+            }
+        }
+        if (out != null) {
+            remove(out);
+            DesktopNotifyDriver.stats.dropped();
+        }
+        window.postSeq = ++seq;
+        window.postPriority = window.getPriority();
+        byPriority.add(window);
+        byAge.add(window);
+        return out;
+    }
+
+    /**
+     * Waits until there's room in the queue or the block timeout is over.
+     * @param needed The room needed, in notifications.
+     * @return <code>true</code> if there's room now.
+     */
+    private boolean awaitRoom(int needed) {
+        long end = System.currentTimeMillis() + blockTimeout;
+        while (capacity - byAge.size() < needed) {
+            long wait = end - System.currentTimeMillis();
+            if (wait <= 0 || policy != DesktopNotifyDriver.OVERFLOW_BLOCK) {
+                return capacity - byAge.size() >= needed;
+            }
+            try {
+                wait(wait);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The next notification to show, or <code>null</code>.
+     */
+    synchronized DesktopNotify peek() {
+        return byPriority.isEmpty() ? null : byPriority.first();
+    }
+
+    /**
+     * Takes a notification out of the queue.
+     * @param window The notification.
+     * @return <code>false</code> if it wasn't queued, like when it was just
+     *         dropped to make room for another one.
+     */
+    synchronized boolean remove(DesktopNotify window) {
+        if (!byPriority.remove(window)) return false;
+        byAge.remove(window);
+        notifyAll();
+        return true;
+    }
+
+    synchronized boolean isEmpty() {
+        return byAge.isEmpty();
+    }
+
+    synchronized int size() {
+        return byAge.size();
+    }
+}
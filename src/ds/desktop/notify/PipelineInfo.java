@@ -0,0 +1,168 @@
+/*
+ * DS Desktop Notify
+ * A small utility to show small notifications in your Desktop anytime!
+ */
+package ds.desktop.notify;
+
+import java.awt.BufferCapabilities;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsDevice;
+import java.awt.GraphicsEnvironment;
+import java.awt.Transparency;
+import java.awt.image.VolatileImage;
+
+/**
+ * Describes the Java2D rendering pipeline in use and what it can do. It is
+ * detected once, the first time it is requested through
+ * {@link Utils#getPipelineInfo()}, and it is logged when the notification
+ * window is deployed.
+ * @author DragShot
+ * @since 0.9
+ */
+public final class PipelineInfo {
+    /** Integer ID for the software pipeline (GDI, X11 core, headless) */
+    public static final int SOFTWARE = 0;
+    /** Integer ID for the XRender pipeline, on Linux and Unix */
+    public static final int XRENDER = 1;
+    /** Integer ID for the OpenGL pipeline */
+    public static final int OPENGL = 2;
+    /** Integer ID for the Direct3D pipeline, on Windows */
+    public static final int DIRECT3D = 3;
+    /** Integer ID for the Metal pipeline, on OSX */
+    public static final int METAL = 4;
+
+    private final int pipeline;
+    private final String configName;
+    private final boolean headless;
+    private final boolean accelerated;
+    private final boolean volatileAccelerated;
+    private final boolean pageFlipping;
+    private final boolean translucency;
+
+    /**
+     * Detects the pipeline in use for the default screen device.
+     */
+    PipelineInfo() {
+        headless = GraphicsEnvironment.isHeadless();
+        if (headless) {
+            pipeline = SOFTWARE;
+            configName = "headless";
+            accelerated = false;
+            volatileAccelerated = false;
+            pageFlipping = false;
+            translucency = false;
+            return;
+        }
+        GraphicsDevice gd = GraphicsEnvironment.getLocalGraphicsEnvironment()
+                .getDefaultScreenDevice();
+        GraphicsConfiguration gc = gd.getDefaultConfiguration();
+        configName = gc.getClass().getName();
+        pipeline = detectPipeline(configName);
+        accelerated = gc.getImageCapabilities().isAccelerated();
+        BufferCapabilities caps = gc.getBufferCapabilities();
+        pageFlipping = caps != null && caps.isPageFlipping();
+        boolean vAccel;
+        try {
+            VolatileImage test = gc.createCompatibleVolatileImage(1, 1,
+                    Transparency.TRANSLUCENT);
+            vAccel = test != null && test.getCapabilities().isAccelerated();
+            if (test != null) test.flush();
+        } catch (RuntimeException ex) {
+            vAccel = false;
+        }
+        volatileAccelerated = vAccel;
+        translucency = gd.isWindowTranslucencySupported(GraphicsDevice
+                .WindowTranslucency.PERPIXEL_TRANSLUCENT);
+    }
+
+    /**
+     * Tells the pipeline apart from the class of the graphics configuration
+     * in use, since Java2D doesn't expose it in any other way.
+     * @param name The class name of the graphics configuration.
+     * @return The integer ID of the pipeline.
+     */
+    private static int detectPipeline(String name) {
+        if (name.contains(".xr.")) return XRENDER;
+        if (name.contains(".opengl.") || name.contains("GLX")
+                || name.contains("WGL") || name.contains("CGL")) return OPENGL;
+        if (name.contains(".d3d.")) return DIRECT3D;
+        if (name.contains(".metal.") || name.contains("MTL")) return METAL;
+        return SOFTWARE;
+    }
+
+    /**
+     * @return The integer ID of the pipeline in use.
+     * @see #SOFTWARE
+     * @see #XRENDER
+     * @see #OPENGL
+     * @see #DIRECT3D
+     * @see #METAL
+     */
+    public int getPipeline() {
+        return pipeline;
+    }
+
+    /**
+     * @return A readable name for the pipeline in use.
+     */
+    public String getPipelineName() {
+        switch (pipeline) {
+            case XRENDER: return "XRender";
+            case OPENGL: return "OpenGL";
+            case DIRECT3D: return "Direct3D";
+            case METAL: return "Metal";
+            default: return headless ? "Software (headless)" : "Software";
+        }
+    }
+
+    /**
+     * @return The class name of the graphics configuration in use, as
+     *         reported by the VM.
+     */
+    public String getConfigurationName() {
+        return configName;
+    }
+
+    /**
+     * @return <code>true</code> if images compatible with the screen can be
+     *         accelerated.
+     */
+    public boolean isAccelerated() {
+        return accelerated;
+    }
+
+    /**
+     * @return <code>true</code> if translucent <code>VolatileImage</code>s
+     *         are accelerated, in which case they're used to cache the
+     *         contents of the notifications.
+     */
+    public boolean isVolatileImageAccelerated() {
+        return volatileAccelerated;
+    }
+
+    /**
+     * @return <code>true</code> if buffer strategies can flip pages instead of
+     *         copying the back buffer.
+     */
+    public boolean isPageFlipping() {
+        return pageFlipping;
+    }
+
+    /**
+     * @return <code>true</code> if per-pixel translucent windows are
+     *         supported.
+     */
+    public boolean isTranslucencySupported() {
+        return translucency;
+    }
+
+    @Override
+    public String toString() {
+        return "PipelineInfo[pipeline=" + getPipelineName()
+                + ", config=" + configName
+                + ", accelerated=" + accelerated
+                + ", volatileAccelerated=" + volatileAccelerated
+                + ", pageFlipping=" + pageFlipping
+                + ", translucency=" + translucency + "]";
+    }
+}
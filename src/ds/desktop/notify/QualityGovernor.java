@@ -0,0 +1,89 @@
+/*
+ * DS Desktop Notify
+ * A small utility to show small notifications in your Desktop anytime!
+ */
+package ds.desktop.notify;
+
+/**
+ * Watches the time it takes to paint frames and lowers the quality of the
+ * animations, one tier at a time, while they don't fit in the time between
+ * frames. The quality is raised back once there's plenty of room again. It
+ * belongs to the thread painting the frames.
+ * @author DragShot
+ * @since 0.9
+ * @see DesktopNotifyDriver#getQualityTier()
+ */
+final class QualityGovernor {
+    /** Fraction of the frame budget above which frames are too slow. */
+    private static final double STEP_DOWN_LOAD = 0.75;
+    /** Fraction of the frame budget below which there's room to spare. */
+    private static final double STEP_UP_LOAD = 0.3;
+    /** Frames in a row too slow before lowering the quality. */
+    private static final int STEP_DOWN_FRAMES = 15;
+    /** Frames in a row with room to spare before raising the quality. */
+    private static final int STEP_UP_FRAMES = 150;
+
+    /** The current quality tier. */
+    private volatile int tier = DesktopNotifyDriver.QUALITY_FULL;
+    /** Moving average of the render time, or -1 right after a change. */
+    private double average = -1;
+    /** Frames in a row over the step down threshold. */
+    private int over = 0;
+    /** Frames in a row under the step up threshold. */
+    private int under = 0;
+
+    /**
+     * @return The current quality tier.
+     */
+    int getTier() {
+        return tier;
+    }
+
+    /**
+     * Goes back to full quality.
+     */
+    void reset() {
+        tier = DesktopNotifyDriver.QUALITY_FULL;
+        restart();
+    }
+
+    /**
+     * Takes a painted frame into account.
+     * @param renderTime The time it took to paint it, in nanoseconds.
+     * @param budget     The time between frames, in nanoseconds.
+     * @return <code>true</code> if the quality tier changed.
+     */
+    boolean frameRendered(long renderTime, long budget) {
+        average = average < 0 ? renderTime : average * 0.9 + renderTime * 0.1;
+        if (average > budget * STEP_DOWN_LOAD) {
+            under = 0;
+            if (++over >= STEP_DOWN_FRAMES
+                    && tier < DesktopNotifyDriver.QUALITY_MINIMAL) {
+                tier++;
+                restart();
+                return true;
+            }
+        } else if (average < budget * STEP_UP_LOAD) {
+            over = 0;
+            if (++under >= STEP_UP_FRAMES
+                    && tier > DesktopNotifyDriver.QUALITY_FULL) {
+                tier--;
+                restart();
+                return true;
+            }
+        } else {
+            over = 0;
+            under = 0;
+        }
+        return false;
+    }
+
+    /**
+     * Starts measuring again, after a change of tier.
+     */
+    private void restart() {
+        average = -1;
+        over = 0;
+        under = 0;
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * DS Desktop Notify
+ * A small utility to show small notifications in your Desktop anytime!
+ */
+package ds.desktop.notify;
+
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Limits the rate at which each source can post notifications, with a token
+ * bucket per source. Posts over the limit aren't shown; they're counted and
+ * summed up in a single "N more from source" notification, posted once per
+ * digest interval while the excess goes on.
+ * @author DragShot
+ * @since 0.9
+ * @see DesktopNotifyDriver#setRateLimit(double, int)
+ */
+final class RateLimiter {
+    /** The limits set for specific sources. */
+    private final ConcurrentHashMap<String, Limit> limits =
+            new ConcurrentHashMap<String, Limit>();
+    /** The buckets of the sources seen so far. */
+    private final ConcurrentHashMap<String, Bucket> buckets =
+            new ConcurrentHashMap<String, Bucket>();
+    /** The limit for sources without one of their own, if any. */
+    private volatile Limit defaultLimit = null;
+    /** The time between digests of a source, in milliseconds. */
+    private volatile long digestInterval = 5000L;
+    /** Posts the digests, created the first time it is needed. */
+    private Timer timer;
+
+    /**
+     * Sets the limit for every source without one of its own.
+     * @param rate  The posts allowed per second, or 0 for no limit.
+     * @param burst The posts allowed at once.
+     */
+    void setDefaultLimit(double rate, int burst) {
+        defaultLimit = rate > 0 ? new Limit(rate, burst) : null;
+        buckets.clear();
+    }
+
+    /**
+     * Sets the limit for a single source.
+     * @param source The source.
+     * @param rate   The posts allowed per second, or 0 to use the default.
+     * @param burst  The posts allowed at once.
+     */
+    void setLimit(String source, double rate, int burst) {
+        if (rate > 0) limits.put(source, new Limit(rate, burst));
+        else limits.remove(source);
+        buckets.remove(source);
+    }
+
+    void setDigestInterval(long millis) {
+        digestInterval = millis;
+    }
+
+    long getDigestInterval() {
+        return digestInterval;
+    }
+
+    /**
+     * Takes a token from the bucket of the source of a notification. If there
+     * are none left, the post is counted for the next digest.
+     * @param window The notification being posted.
+     * @return <code>true</code> if it can be shown.
+     */
+    boolean admit(DesktopNotify window) {
+        String source = window.getSource();
+        if (source == null) return true;
+        Bucket bucket = buckets.get(source);
+        if (bucket == null) {
+            Limit limit = limits.get(source);
+            if (limit == null) limit = defaultLimit;
+            if (limit == null) return true;
+            bucket = new Bucket(limit);
+            Bucket prev = buckets.putIfAbsent(source, bucket);
+            if (prev != null) bucket = prev;
+        }
+        boolean schedule;
+        synchronized (bucket) {
+            if (bucket.take(System.nanoTime())) return true;
+            bucket.suppressed++;
+            schedule = !bucket.digestPending;
+            bucket.digestPending = true;
+        }
+        DesktopNotifyDriver.stats.limited();
+        if (schedule) scheduleDigest(source, bucket);
+        return false;
+    }
+
+    /**
+     * Posts the digest of a source once the digest interval is over.
+     */
+    private synchronized void scheduleDigest(final String source,
+            final Bucket bucket) {
+        if (timer == null) timer = new Timer("DesktopNotify Digest Timer", true);
+        timer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                int count;
+                synchronized (bucket) {
+                    count = bucket.suppressed;
+                    bucket.suppressed = 0;
+                    bucket.digestPending = false;
+                }
+                if (count > 0) postDigest(source, count);
+            }
+        }, digestInterval);
+    }
+
+    /**
+     * Shows the notification that sums up the posts held back from a source.
+     * It has no source, so it is never limited.
+     */
+    private void postDigest(String source, int count) {
+        DesktopNotify digest = new DesktopNotify(count + " more from " + source,
+                null, DesktopNotify.INFORMATION,
+                DesktopNotify.getDefaultTextOrientation(), null);
+        DesktopNotifyDriver.stats.digestPosted(count);
+        digest.show();
+    }
+
+    /**
+     * The rate limit of a source.
+     */
+    private static final class Limit {
+        /** Tokens added per nanosecond. */
+        final double rate;
+        final int burst;
+
+        Limit(double postsPerSecond, int burst) {
+            this.rate = postsPerSecond / 1e9;
+            this.burst = burst;
+        }
+    }
+
+    /**
+     * The tokens left for a source, and the posts held back from it.
+     */
+    private static final class Bucket {
+        final Limit limit;
+        double tokens;
+        long last;
+        int suppressed = 0;
+        boolean digestPending = false;
+
+        Bucket(Limit limit) {
+            this.limit = limit;
+            this.tokens = limit.burst;
+            this.last = System.nanoTime();
+        }
+
+        /**
+         * Refills the bucket and takes a token, if there's any.
+         * @param now The current time, as given by System.nanoTime().
+         */
+        boolean take(long now) {
+            tokens = Math.min(limit.burst, tokens + (now - last) * limit.rate);
+            last = now;
+            if (tokens < 1) return false;
+            tokens--;
+            return true;
+        }
+    }
+}
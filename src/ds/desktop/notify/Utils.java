@@ -6,6 +6,7 @@ package ds.desktop.notify;
 
 import java.awt.AWTException;
 import java.awt.Dimension;
+import java.awt.DisplayMode;
 import java.awt.Frame;
 import java.awt.GraphicsConfiguration;
 import java.awt.GraphicsDevice;
@@ -14,6 +15,8 @@ import java.awt.Image;
 import java.awt.Rectangle;
 import java.awt.Robot;
 import java.awt.Toolkit;
+import java.awt.Transparency;
+import java.awt.image.VolatileImage;
 import java.lang.reflect.Method;
 import java.util.Arrays;
 
@@ -191,6 +194,69 @@ public class Utils {
         return nativeTrans;
     }
     
+    /**
+     * Checks the refresh rate of a display.
+     * @param device The display to check.
+     * @return The refresh rate in Hz, or
+     *         <code>DisplayMode.REFRESH_RATE_UNKNOWN</code> if it can't be
+     *         determined.
+     */
+    public static int getRefreshRate(GraphicsDevice device){
+        DisplayMode mode = device.getDisplayMode();
+        int rate = mode == null ? DisplayMode.REFRESH_RATE_UNKNOWN
+                                : mode.getRefreshRate();
+        DesktopNotify.logDebug("NotifyUtils", "Display refresh rate: "
+                + (rate == DisplayMode.REFRESH_RATE_UNKNOWN ? "unknown" : rate+"Hz"));
+        return rate;
+    }
+    
+    private static PipelineInfo pipelineInfo;
+    
+    /**
+     * Detects the Java2D rendering pipeline in use, like XRender or OpenGL on
+     * Linux, and what it is capable of. The detection runs only once.
+     * @return The information about the pipeline in use.
+     */
+    public static synchronized PipelineInfo getPipelineInfo(){
+        if (pipelineInfo == null) {
+            pipelineInfo = new PipelineInfo();
+        }
+        return pipelineInfo;
+    }
+    
+    /**
+     * Creates a translucent image to paint on, compatible with a given device.
+     * A <code>VolatileImage</code> is created if the pipeline accelerates
+     * them, falling back to a <code>BufferedImage</code> otherwise. Callers
+     * must validate volatile images before using them.
+     * <p>
+     * Volatile images follow the scale of the device by themselves. Buffered
+     * images don't, so they're made larger by the given scale to be painted
+     * and drawn at device resolution, instead of being stretched on HiDPI
+     * displays.
+     * @param gc     The configuration of the target device.
+     * @param w      The width of the image.
+     * @param h      The height of the image.
+     * @param scaleX The horizontal scale of the device, like 2 at 200%.
+     * @param scaleY The vertical scale of the device.
+     * @return A new, fully transparent image.
+     */
+    static Image createTranslucentImage(GraphicsConfiguration gc, int w, int h,
+            double scaleX, double scaleY){
+        if (getPipelineInfo().isVolatileImageAccelerated()) {
+            try {
+                VolatileImage img = gc.createCompatibleVolatileImage(w, h,
+                        Transparency.TRANSLUCENT);
+                if (img != null) return img;
+            } catch (RuntimeException ex) {
+                DesktopNotify.logDebug("NotifyUtils", "Unable to create a "
+                        + "volatile image: " + ex);
+            }
+        }
+        return gc.createCompatibleImage(Math.max(1, (int)Math.ceil(w * scaleX)),
+                Math.max(1, (int)Math.ceil(h * scaleY)), Transparency.TRANSLUCENT);
+    }
+    
     /**
      * Creates a background for a fake effect of translucency.
      * @param bounds The area to capture.
@@ -0,0 +1,55 @@
+/*
+ * DS Desktop Notify
+ * A small utility to show small notifications in your Desktop anytime!
+ */
+package ds.desktop.notify;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Helpers for the checks in this folder. Each check is a plain program that
+ * runs headless and exits with status 1 as soon as something fails. Compile
+ * them along with the library and run them like:
+ * <pre>java -Djava.awt.headless=true -cp build/classes:build/test/classes ds.desktop.notify.PendingQueueCheck</pre>
+ * @author DragShot
+ * @since 0.9
+ */
+final class Checks {
+    private Checks() {}
+
+    /**
+     * Keeps posts from starting the driver thread, which needs a display.
+     * Posted notifications are laid out and stay in the pending queue, where
+     * checks can look at them.
+     */
+    static void parkDriver() {
+        DesktopNotifyDriver.tredo.set(new Thread("Parked driver"));
+    }
+
+    /**
+     * Takes every notification out of the pending queue, like the frame
+     * updates would if there was room on screen.
+     * @return The notifications taken, in the order they'd be shown.
+     */
+    static List<DesktopNotify> drain() {
+        ArrayList<DesktopNotify> list = new ArrayList<DesktopNotify>();
+        for (DesktopNotify window; (window = DesktopNotifyDriver.pending.peek()) != null; ) {
+            if (DesktopNotifyDriver.pending.remove(window)) list.add(window);
+        }
+        return list;
+    }
+
+    /**
+     * Fails the check being run if a condition doesn't hold.
+     * @param condition The condition.
+     * @param message   What is being checked.
+     */
+    static void check(boolean condition, String message) {
+        if (!condition) {
+            System.err.println("FAILED: " + message);
+            System.exit(1);
+        }
+        System.out.println("ok: " + message);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * DS Desktop Notify
+ * A small utility to show small notifications in your Desktop anytime!
+ */
+package ds.desktop.notify;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Checks that updating and painting notifications allocates nothing on steady
+ * and hover frames, for a stack of 20 notifications painted into an image.
+ * Fading frames are left out: the JDK software loops that blend them allocate
+ * on their own.
+ * @author DragShot
+ * @since 0.9
+ */
+public class FrameAllocationCheck {
+    private static final int FRAMES = 2000;
+
+    public static void main(String[] args) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        Checks.check(threads.isThreadAllocatedMemorySupported(),
+                "allocated bytes can be measured");
+        threads.setThreadAllocatedMemoryEnabled(true);
+        DesktopNotify[] stack = new DesktopNotify[20];
+        for (int i = 0; i < stack.length; i++) {
+            stack[i] = new DesktopNotify("Notification " + i, "Some message "
+                    + "long enough to take a couple of lines in the stack.",
+                    DesktopNotify.INFORMATION, DesktopNotify.LEFT_TO_RIGHT, null);
+            stack[i].setWidth(300);
+            stack[i].sortMessage();
+            stack[i].popupStart = 0L; //Faded in long ago
+            stack[i].timeOut = 0L;    //Never fades out
+        }
+        BufferedImage img = new BufferedImage(300, 2000, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = img.createGraphics();
+        long l = System.currentTimeMillis();
+        long tid = Thread.currentThread().getId();
+        //Warm up, so every cached image is painted and the code is compiled
+        for (int i = 0; i < 5; i++) {
+            run(stack, g, l, false);
+            run(stack, g, l, true);
+        }
+        long base = threads.getThreadAllocatedBytes(tid);
+        base = threads.getThreadAllocatedBytes(tid) - base; //The probe itself
+        long start = threads.getThreadAllocatedBytes(tid);
+        run(stack, g, l, false);
+        long steady = threads.getThreadAllocatedBytes(tid) - start - base;
+        start = threads.getThreadAllocatedBytes(tid);
+        run(stack, g, l, true);
+        long hover = threads.getThreadAllocatedBytes(tid) - start - base;
+        g.dispose();
+        Checks.check(steady <= 0, "steady frames allocate 0 bytes (" + steady
+                + " in " + FRAMES + " frames)");
+        Checks.check(hover <= 0, "hover frames allocate 0 bytes (" + hover
+                + " in " + FRAMES + " frames)");
+    }
+
+    /**
+     * Updates and paints the stack frame after frame. With hovering, the
+     * pointer moves to another notification every 25 frames, so highlights
+     * keep going up and down.
+     */
+    private static void run(DesktopNotify[] stack, Graphics2D g, long l,
+            boolean hovering) {
+        for (int f = 0; f < FRAMES; f++) {
+            int hovered = hovering ? f / 25 % stack.length : -1;
+            int y = 0;
+            for (int i = 0; i < stack.length; i++) {
+                DesktopNotify window = stack[i];
+                window.update(i == hovered, l);
+                window.paint(0, y, g);
+                y += window.h + 5;
+            }
+        }
+    }
+}
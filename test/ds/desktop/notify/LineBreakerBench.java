@@ -0,0 +1,83 @@
+/*
+ * DS Desktop Notify
+ * A small utility to show small notifications in your Desktop anytime!
+ */
+package ds.desktop.notify;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+
+/**
+ * Times the line breaking of 1 KB and 64 KB messages, of words and of text
+ * without spaces, and with the layout cache cold and warm. The time per
+ * character must stay about the same from 1 KB to 64 KB, since every
+ * character is measured only once, and a cache hit must be cheaper than
+ * breaking the text again.
+ * @author DragShot
+ * @since 0.9
+ */
+public class LineBreakerBench {
+    private static final int WIDTH = 280;
+    /** Runs of each measure; the fastest one is kept. */
+    private static final int RUNS = 20;
+
+    public static void main(String[] args) {
+        Font font = new Font("Dialog", Font.PLAIN, 12);
+        FontMetrics ftm = DesktopNotifyDriver.getFontMetrics(font);
+        bench("words", "The quick brown fox jumps over the lazy dog. ", font, ftm);
+        bench("no spaces", "\u901a\u77e5\u304c\u5c4a\u304d\u307e\u3057\u305f"
+                + "ABCDEFGHIJKLMNOP", font, ftm);
+    }
+
+    private static void bench(String name, String seed, Font font, FontMetrics ftm) {
+        String small = repeat(seed, 1 << 10), large = repeat(seed, 1 << 16);
+        //Warm up, so the code is compiled before it is timed
+        for (int i = 0; i < 5; i++) LineBreaker.breakLines(large, ftm, WIDTH);
+        long smallTime = time(small, ftm), largeTime = time(large, ftm);
+        double smallRate = (double)smallTime / small.length();
+        double largeRate = (double)largeTime / large.length();
+        System.out.printf("%s: 1 KB in %.1f us, 64 KB in %.1f us (%.1f and %.1f "
+                + "ns per char)%n", name, smallTime / 1000.0, largeTime / 1000.0,
+                smallRate, largeRate);
+        Checks.check(largeRate < smallRate * 4, name + ": the time per char "
+                + "stays flat from 1 KB to 64 KB");
+        //A new string each time, so the cache has never seen it
+        long cold = Long.MAX_VALUE, warm = Long.MAX_VALUE;
+        for (int r = 0; r < RUNS; r++) {
+            String text = new StringBuilder(large).append(r).toString();
+            long start = System.nanoTime();
+            LineBreaker.split(text, font, WIDTH);
+            cold = Math.min(cold, System.nanoTime() - start);
+            start = System.nanoTime();
+            LineBreaker.split(text, font, WIDTH);
+            warm = Math.min(warm, System.nanoTime() - start);
+        }
+        System.out.printf("%s: 64 KB through the cache, %.1f us cold, %.1f us "
+                + "warm%n", name, cold / 1000.0, warm / 1000.0);
+        Checks.check(warm * 10 < cold, name + ": a cache hit is at least 10 "
+                + "times cheaper than a miss");
+    }
+
+    /**
+     * @return The fastest of a few runs of breaking the text, in nanoseconds.
+     */
+    private static long time(String text, FontMetrics ftm) {
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < RUNS; r++) {
+            long start = System.nanoTime();
+            LineBreaker.breakLines(text, ftm, WIDTH);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    /**
+     * @return The seed repeated up to the given length.
+     */
+    private static String repeat(String seed, int length) {
+        StringBuilder sb = new StringBuilder(length + seed.length());
+        while (sb.length() < length) sb.append(seed);
+        sb.setLength(length);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * DS Desktop Notify
+ * A small utility to show small notifications in your Desktop anytime!
+ */
+package ds.desktop.notify;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks the bounded pending queue: memory stays flat and every post is
+ * accounted for under a producer that never stops, for each overflow policy,
+ * and batches are queued as a whole.
+ * @author DragShot
+ * @since 0.9
+ */
+public class PendingQueueCheck {
+    private static final String[] POLICIES = {"reject", "drop oldest",
+            "drop lowest", "block"};
+
+    public static void main(String[] args) throws InterruptedException {
+        Checks.parkDriver();
+        floodWith(DesktopNotifyDriver.OVERFLOW_REJECT);
+        floodWith(DesktopNotifyDriver.OVERFLOW_DROP_OLDEST);
+        floodWith(DesktopNotifyDriver.OVERFLOW_DROP_LOWEST);
+        floodBlocking();
+        batchWith(DesktopNotifyDriver.OVERFLOW_REJECT);
+        batchWith(DesktopNotifyDriver.OVERFLOW_DROP_OLDEST);
+        batchWith(DesktopNotifyDriver.OVERFLOW_DROP_LOWEST);
+        batchBlocking();
+    }
+
+    /**
+     * Posts 200k notifications into a queue for 1000, with nothing taking
+     * them out. The heap used after 200k posts must be about the same as
+     * after 50k.
+     */
+    private static void floodWith(int policy) {
+        String name = POLICIES[policy];
+        DesktopNotifyDriver.setQueueCapacity(1000, policy, 0L);
+        DriverStats before = DesktopNotifyDriver.getStats();
+        long heap = 0L;
+        int posted = 0;
+        for (int round = 1; round <= 4; round++) {
+            for (int i = 0; i < 50000; i++) {
+                post("Post " + posted, posted % 4);
+                posted++;
+            }
+            if (round == 1) heap = usedHeap();
+        }
+        long growth = usedHeap() - heap;
+        DriverStats after = DesktopNotifyDriver.getStats();
+        long rejected = after.getRejectedCount() - before.getRejectedCount();
+        long dropped = after.getDroppedCount() - before.getDroppedCount();
+        int queued = DesktopNotifyDriver.getQueuedCount();
+        Checks.check(queued == 1000, name + ": the queue is kept at its capacity ("
+                + queued + ")");
+        Checks.check(queued + rejected + dropped == posted, name + ": every post "
+                + "is queued, rejected or dropped (" + queued + " + " + rejected
+                + " + " + dropped + " of " + posted + ")");
+        Checks.check(growth < 4L << 20, name + ": the heap stays flat from 50k to "
+                + "200k posts (" + (growth >> 10) + " KB)");
+        Checks.drain();
+    }
+
+    /**
+     * Posts 20k notifications into a queue for 100 that blocks for up to
+     * 20 ms, while another thread takes them out slower than they come.
+     */
+    private static void floodBlocking() throws InterruptedException {
+        DesktopNotifyDriver.setQueueCapacity(100, DesktopNotifyDriver.OVERFLOW_BLOCK, 20L);
+        DriverStats before = DesktopNotifyDriver.getStats();
+        final int[] taken = {0};
+        final int[] maxQueued = {0};
+        Thread consumer = new Thread() {
+            @Override
+            public void run() {
+                while (!isInterrupted()) {
+                    maxQueued[0] = Math.max(maxQueued[0], DesktopNotifyDriver.getQueuedCount());
+                    taken[0] += Checks.drain().size();
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                }
+            }
+        };
+        consumer.start();
+        int posted = 20000;
+        for (int i = 0; i < posted; i++) post("Blocking post " + i, 1);
+        consumer.interrupt();
+        consumer.join();
+        taken[0] += Checks.drain().size();
+        DriverStats after = DesktopNotifyDriver.getStats();
+        long rejected = after.getRejectedCount() - before.getRejectedCount();
+        long dropped = after.getDroppedCount() - before.getDroppedCount();
+        Checks.check(maxQueued[0] <= 100, "block: the queue is kept at its "
+                + "capacity (" + maxQueued[0] + ")");
+        Checks.check(dropped == 0 && taken[0] + rejected == posted, "block: every "
+                + "post is taken or rejected (" + taken[0] + " + " + rejected
+                + " of " + posted + ")");
+    }
+
+    /**
+     * Queues a batch of 10 into a queue for 10 that already holds 5, with
+     * priorities that make the batch win or lose against what is queued.
+     */
+    private static void batchWith(int policy) {
+        String name = POLICIES[policy];
+        PendingQueue queue = new PendingQueue();
+        queue.setCapacity(10, policy, 0L);
+        List<DesktopNotify> old = fill(queue, 5, DesktopNotify.PRIORITY_NORMAL);
+        List<DesktopNotify> batch = batch(10, DesktopNotify.PRIORITY_HIGH);
+        List<DesktopNotify> out = queue.offerAll(batch);
+        Checks.check(queue.size() == 10, name + ": the batch fills the queue");
+        switch (policy) {
+            case DesktopNotifyDriver.OVERFLOW_REJECT:
+                Checks.check(out.equals(batch.subList(5, 10)), name
+                        + ": the part of the batch that doesn't fit is rejected");
+                break;
+            case DesktopNotifyDriver.OVERFLOW_DROP_OLDEST:
+                Checks.check(out.equals(old), name
+                        + ": the oldest notifications make room for the batch");
+                break;
+            default:
+                Checks.check(out.containsAll(old) && out.size() == 5, name
+                        + ": lower priorities make room for the batch");
+                //A batch with a lower priority than everything queued loses
+                queue = new PendingQueue();
+                queue.setCapacity(10, policy, 0L);
+                fill(queue, 5, DesktopNotify.PRIORITY_HIGH);
+                batch = batch(10, DesktopNotify.PRIORITY_LOW);
+                out = queue.offerAll(batch);
+                Checks.check(out.size() == 5 && batch.containsAll(out), name
+                        + ": a batch with a lower priority is dropped instead");
+        }
+    }
+
+    /**
+     * Queues batches into a full queue that blocks for up to 200 ms. It must
+     * wait once for the whole batch, and queue it all at once.
+     */
+    private static void batchBlocking() throws InterruptedException {
+        String name = POLICIES[DesktopNotifyDriver.OVERFLOW_BLOCK];
+        final PendingQueue queue = new PendingQueue();
+        queue.setCapacity(10, DesktopNotifyDriver.OVERFLOW_BLOCK, 200L);
+        fill(queue, 10, DesktopNotify.PRIORITY_NORMAL);
+        //Nothing makes room: one wait, then what doesn't fit is rejected
+        long start = System.currentTimeMillis();
+        List<DesktopNotify> out = queue.offerAll(batch(30, DesktopNotify.PRIORITY_NORMAL));
+        long took = System.currentTimeMillis() - start;
+        Checks.check(out.size() == 30 && took < 1000, name + ": a batch that "
+                + "can't fit waits only once (" + took + " ms)");
+        //Room is made slowly: the batch goes in once it all fits
+        final List<DesktopNotify> batch = batch(8, DesktopNotify.PRIORITY_NORMAL);
+        final boolean[] partial = {false};
+        Thread consumer = new Thread() {
+            @Override
+            public void run() {
+                boolean seen = false;
+                for (int i = 0; i < 200; i++) {
+                    DesktopNotify head = queue.peek();
+                    if (head == null && seen) return;
+                    if (!seen && batch.contains(head)) {
+                        //The first one of the batch out, all of it must be in
+                        seen = true;
+                        partial[0] = queue.size() < batch.size();
+                    }
+                    if (head != null) queue.remove(head);
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                }
+            }
+        };
+        consumer.start();
+        out = queue.offerAll(batch);
+        consumer.join();
+        Checks.check(out.isEmpty(), name + ": a batch that fits once room is "
+                + "made is queued whole");
+        Checks.check(!partial[0], name + ": a batch is never seen in part");
+    }
+
+    /**
+     * Posts a notification through the driver, like an application would.
+     */
+    private static void post(String title, int priority) {
+        DesktopNotify window = new DesktopNotify(title, "A message long enough "
+                + "to be wrapped in a couple of lines.", DesktopNotify.INFORMATION,
+                DesktopNotify.LEFT_TO_RIGHT, null);
+        window.setPriority(priority);
+        window.show();
+    }
+
+    private static List<DesktopNotify> fill(PendingQueue queue, int count,
+            int priority) {
+        List<DesktopNotify> list = batch(count, priority);
+        for (DesktopNotify window : list) queue.offer(window);
+        return list;
+    }
+
+    private static List<DesktopNotify> batch(int count, int priority) {
+        List<DesktopNotify> list = new ArrayList<DesktopNotify>(count);
+        for (int i = 0; i < count; i++) {
+            DesktopNotify window = new DesktopNotify("Batch " + i, null,
+                    DesktopNotify.INFORMATION, DesktopNotify.LEFT_TO_RIGHT, null);
+            window.setPriority(priority);
+            list.add(window);
+        }
+        return list;
+    }
+
+    /**
+     * @return The heap in use once the garbage is collected, in bytes.
+     */
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * DS Desktop Notify
+ * A small utility to show small notifications in your Desktop anytime!
+ */
+package ds.desktop.notify;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Checks that notifications posted from many threads at once all get through
+ * the pending queue, once each, while another thread takes them out like the
+ * frame updates do. Then checks that duplicates posted at the same time are
+ * coalesced into a single notification.
+ * @author DragShot
+ * @since 0.9
+ */
+public class PostingStressCheck {
+    private static final int THREADS = 32;
+    private static final int POSTS = 100000;
+    private static final int ROUNDS = 5000;
+
+    public static void main(String[] args) throws Exception {
+        Checks.parkDriver();
+        postFromManyThreads();
+        coalesceFromManyThreads();
+    }
+
+    /**
+     * 32 threads post 100k notifications in total, while the queue is being
+     * drained.
+     */
+    private static void postFromManyThreads() throws InterruptedException {
+        final Set<DesktopNotify> taken = Collections.newSetFromMap(
+                new IdentityHashMap<DesktopNotify, Boolean>());
+        final int[] duplicates = {0};
+        final AtomicBoolean posting = new AtomicBoolean(true);
+        Thread consumer = new Thread() {
+            @Override
+            public void run() {
+                while (posting.get() || !DesktopNotifyDriver.pending.isEmpty()) {
+                    for (DesktopNotify window : Checks.drain()) {
+                        if (!taken.add(window)) duplicates[0]++;
+                    }
+                    Thread.yield();
+                }
+            }
+        };
+        consumer.start();
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] producers = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            final int id = t;
+            producers[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                    for (int i = id; i < POSTS; i += THREADS) {
+                        new DesktopNotify("Post " + i, "From thread " + id,
+                                DesktopNotify.INFORMATION,
+                                DesktopNotify.LEFT_TO_RIGHT, null).show();
+                    }
+                }
+            };
+            producers[t].start();
+        }
+        start.countDown();
+        for (Thread producer : producers) producer.join();
+        posting.set(false);
+        consumer.join();
+        Checks.check(taken.size() == POSTS, THREADS + " threads: every post "
+                + "gets through (" + taken.size() + " of " + POSTS + ")");
+        Checks.check(duplicates[0] == 0, THREADS + " threads: no post is taken "
+                + "twice (" + duplicates[0] + ")");
+    }
+
+    /**
+     * 32 threads post the same notification at the same time, round after
+     * round. Each round must queue a single notification that counts all 32.
+     */
+    private static void coalesceFromManyThreads() throws Exception {
+        DesktopNotifyDriver.setCoalescing(true);
+        final CyclicBarrier barrier = new CyclicBarrier(THREADS + 1);
+        final String[] message = {null};
+        Thread[] producers = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            producers[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int r = 0; r < ROUNDS; r++) {
+                            barrier.await(); //Round starts
+                            new DesktopNotify("Alert", message[0],
+                                    DesktopNotify.WARNING,
+                                    DesktopNotify.LEFT_TO_RIGHT, null).show();
+                            barrier.await(); //Round done
+                        }
+                    } catch (Exception ex) {
+                        ex.printStackTrace();
+                    }
+                }
+            };
+            producers[t].setDaemon(true);
+            producers[t].start();
+        }
+        int extra = 0, miscounted = 0;
+        for (int r = 0; r < ROUNDS; r++) {
+            message[0] = "Round " + r;
+            barrier.await();
+            barrier.await();
+            List<DesktopNotify> queued = Checks.drain();
+            extra += queued.size() - 1;
+            for (DesktopNotify window : queued) {
+                if (window.getOccurrences() != THREADS) miscounted++;
+            }
+        }
+        DesktopNotifyDriver.setCoalescing(false);
+        Checks.check(extra == 0, ROUNDS + " rounds of " + THREADS + " duplicates: "
+                + "one notification is queued per round (" + extra + " extra)");
+        Checks.check(miscounted == 0, ROUNDS + " rounds of " + THREADS
+                + " duplicates: it counts them all (" + miscounted + " wrong)");
+    }
+}
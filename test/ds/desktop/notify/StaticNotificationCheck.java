@@ -0,0 +1,61 @@
+/*
+ * DS Desktop Notify
+ * A small utility to show small notifications in your Desktop anytime!
+ */
+package ds.desktop.notify;
+
+/**
+ * Checks that a notification that never expires stops asking for frames once
+ * it has faded in: it isn't animated anymore, its updates report no changes,
+ * and the driver is left with nothing to wake up for.
+ * @author DragShot
+ * @since 0.9
+ */
+public class StaticNotificationCheck {
+    /** A frame every 16 ms, like at 60 Hz. */
+    private static final long FRAME = 16L;
+
+    public static void main(String[] args) {
+        DesktopNotify window = new DesktopNotify("Static", "A notification that "
+                + "stays until it's clicked.", DesktopNotify.INFORMATION,
+                DesktopNotify.LEFT_TO_RIGHT, null);
+        window.setWidth(300);
+        window.sortMessage();
+        window.setTimeout(0L);
+        long start = 1000000L;
+        window.popupStart = start;
+        ExpiryQueue expiries = new ExpiryQueue();
+        //Fade in, with frames for as long as the driver would paint them
+        long l = start;
+        int fading = 0;
+        boolean animating = true;
+        while (animating && fading < 1000) {
+            l += FRAME;
+            window.update(false, l);
+            expiries.schedule(window);
+            animating = window.isAnimating(l);
+            fading++;
+        }
+        Checks.check(!animating, "the fade-in ends (" + fading + " frames)");
+        //Ten seconds of frames after the fade-in
+        int animated = 0, changed = 0;
+        for (long end = l + 10000; l < end; l += FRAME) {
+            if (window.isAnimating(l)) animated++;
+            if (window.update(false, l)) changed++;
+            expiries.schedule(window);
+        }
+        Checks.check(animated == 0, "it isn't animated once faded in ("
+                + animated + " frames)");
+        Checks.check(changed == 0, "its updates report no changes once faded in ("
+                + changed + " frames)");
+        long wake = expiries.nextWake();
+        Checks.check(wake == Long.MAX_VALUE, "the driver has nothing to wake up "
+                + "for (" + (wake == Long.MAX_VALUE ? "never" : wake + " ms") + ")");
+        //A timeout makes it fade out on its own again
+        window.setTimeout(l - start + 3000);
+        expiries.schedule(window);
+        wake = expiries.nextWake();
+        Checks.check(wake == l + 2500, "a timeout schedules a wake before it "
+                + "fades out (" + (wake - l) + " ms ahead)");
+    }
+}